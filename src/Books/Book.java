@@ -1,6 +1,7 @@
 package Books;
 
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * This class handles all of the responsibilities of a single book in the library. Action such as adding more copies of
@@ -17,8 +18,8 @@ public class Book implements java.io.Serializable
     private String publisher;
     private String publishDate;
     private int pageCount;
-    private int numCopies;
-    private int availableCopies;
+    private AtomicInteger numCopies = new AtomicInteger();
+    private AtomicInteger availableCopies = new AtomicInteger();
 
     /**
      * Constructor for creating a new Book object.
@@ -40,6 +41,17 @@ public class Book implements java.io.Serializable
         this.pageCount = pageCount;
     }
 
+    /**
+     * Constructor for copying a catalog book. The copy shares the book's immutable details but has its own temporary
+     * id and copy counts, so it can be numbered for a search or purchased without changing the original.
+     *
+     * @param book - The book to be copied.
+     */
+    public Book(Book book)
+    {
+        this(book.isbn, book.title, book.authors, book.publisher, book.publishDate, book.pageCount);
+    }
+
     /**
      * Simple getter method for retrieving the temporary id of a given book.
      *
@@ -110,6 +122,16 @@ public class Book implements java.io.Serializable
         return publishDate;
     }
 
+    /**
+     * Simple getter method for retrieving the page count of a book.
+     *
+     * @return An integer representing the page count of the given book.
+     */
+    public int getPageCount()
+    {
+        return pageCount;
+    }
+
     /**
      * Simple getter method for retrieving the number available copies of a book.
      *
@@ -117,7 +139,17 @@ public class Book implements java.io.Serializable
      */
     public int getAvailableCopies()
     {
-        return availableCopies;
+        return availableCopies.get();
+    }
+
+    /**
+     * Simple getter method for retrieving the total number of copies of a book owned by the library.
+     *
+     * @return An integer representing the number of owned copies of the given book.
+     */
+    public int getNumCopies()
+    {
+        return numCopies.get();
     }
 
     /**
@@ -129,7 +161,7 @@ public class Book implements java.io.Serializable
     public String toString(String comm)
     {
         if(comm.equals("bSearch"))
-            return this.availableCopies + "," + this.isbn + ",\"" + this.title + "\"," + authorString() + "," + this.publisher + "," + this.publishDate + "," + this.pageCount;
+            return this.availableCopies.get() + "," + this.isbn + ",\"" + this.title + "\"," + authorString() + "," + this.publisher + "," + this.publishDate + "," + this.pageCount;
         else if(comm.equals("fBorrow"))
             return this.tempID + "," + this.isbn + ",\"" + this.title + ",";
         else if(comm.equals("sSearch"))
@@ -167,8 +199,8 @@ public class Book implements java.io.Serializable
      */
     public void addCopies(int amt)
     {
-        numCopies += amt;
-        availableCopies += amt;
+        numCopies.addAndGet(amt);
+        availableCopies.addAndGet(amt);
     }
 
     /**
@@ -178,24 +210,41 @@ public class Book implements java.io.Serializable
      */
     public void removeCopies(int amt)
     {
-        numCopies -= amt;
-        availableCopies -= amt;
+        numCopies.addAndGet(-amt);
+        availableCopies.addAndGet(-amt);
     }
 
     /**
-     * Decrements the amount of available book copies when a visitor checks out a copy of the given book.
+     * Restores the copy counts of a book loaded from a snapshot.
+     *
+     * @param numCopies - The amount of copies owned by the library.
+     * @param availableCopies - The amount of copies not checked out.
+     */
+    void restoreCopies(int numCopies, int availableCopies)
+    {
+        this.numCopies.set(numCopies);
+        this.availableCopies.set(availableCopies);
+    }
+
+    /**
+     * Decrements the amount of available book copies when a visitor checks out a copy of the given book. The count is
+     * only decremented if it is still positive at the moment of the update, so two visitors can never both take the
+     * last copy.
      *
      * @return Returns true if there are available copies, false otherwise.
      */
     public boolean checkout()
     {
-        if(availableCopies > 0)
+        int available = availableCopies.get();
+        while (available > 0)
         {
-            availableCopies--;
-            return true;
+            if (availableCopies.compareAndSet(available, available - 1))
+            {
+                return true;
+            }
+            available = availableCopies.get();
         }
-        else
-            return false;
+        return false;
     }
 
     /**
@@ -0,0 +1,269 @@
+package Books;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * An inverted index over a collection of books, keyed on title, author and publisher tokens. Each token maps to a
+ * posting list of the ISBNs of the books that contain it, so a search only has to intersect a few posting lists instead
+ * of walking every book.
+ *
+ * Titles are matched by substring, so every suffix of every title word is indexed. Any word contained in a title word
+ * is then a prefix of one of the indexed suffixes and can be found with a range lookup on the sorted token map.
+ *
+ * @author Jake Bashaw
+ */
+public class BookIndex implements java.io.Serializable
+{
+    /**
+     * Suffixes of the lower case title words, mapped to the ISBNs of the books whose title contains them.
+     */
+    private TreeMap<String, HashSet<String>> titleTokens;
+
+    /**
+     * Author names mapped to the ISBNs of the books they wrote.
+     */
+    private HashMap<String, HashSet<String>> authors;
+
+    /**
+     * Publisher names mapped to the ISBNs of the books they published.
+     */
+    private HashMap<String, HashSet<String>> publishers;
+
+    /**
+     * Constructor for an empty BookIndex.
+     */
+    public BookIndex()
+    {
+        this.titleTokens = new TreeMap<>();
+        this.authors = new HashMap<>();
+        this.publishers = new HashMap<>();
+    }
+
+    /**
+     * Adds a book to every posting list it belongs in. Adding a book that is already indexed has no effect.
+     *
+     * @param book - The book to be indexed.
+     */
+    public void add(Book book)
+    {
+        String isbn = book.getIsbn();
+
+        for (String token : titleSuffixes(book.getTitle()))
+        {
+            this.titleTokens.computeIfAbsent(token, k -> new HashSet<>()).add(isbn);
+        }
+
+        if (book.getAuthor() != null)
+        {
+            for (String author : book.getAuthor())
+            {
+                this.authors.computeIfAbsent(author, k -> new HashSet<>()).add(isbn);
+            }
+        }
+
+        if (book.getPublisher() != null)
+        {
+            this.publishers.computeIfAbsent(book.getPublisher(), k -> new HashSet<>()).add(isbn);
+        }
+    }
+
+    /**
+     * Removes a book from every posting list it belongs in. Posting lists that become empty are dropped.
+     *
+     * @param book - The book to be removed from the index.
+     */
+    public void remove(Book book)
+    {
+        String isbn = book.getIsbn();
+
+        for (String token : titleSuffixes(book.getTitle()))
+        {
+            removePosting(this.titleTokens, token, isbn);
+        }
+
+        if (book.getAuthor() != null)
+        {
+            for (String author : book.getAuthor())
+            {
+                removePosting(this.authors, author, isbn);
+            }
+        }
+
+        if (book.getPublisher() != null)
+        {
+            removePosting(this.publishers, book.getPublisher(), isbn);
+        }
+    }
+
+    /**
+     * Finds the ISBNs of the books that may match the supplied search criteria. A criterion of "*" matches everything.
+     * Title matches are candidates only; the caller still has to check the title itself, since the words of the search
+     * title are matched independently of each other.
+     *
+     * @param title - The title of the desired book(s).
+     * @param authors - The authors of the desired book(s).
+     * @param publisher - The publisher of the desired book(s).
+     * @return The set of candidate ISBNs, or null if no criterion narrows the search.
+     */
+    public Set<String> candidates(String title, List<String> authors, String publisher)
+    {
+        Set<String> result = null;
+
+        if (!title.equals("*"))
+        {
+            for (String word : words(title))
+            {
+                result = intersect(result, titlePostings(word));
+            }
+        }
+
+        if (authors != null && !authors.contains("*"))
+        {
+            for (String author : authors)
+            {
+                result = intersect(result, this.authors.get(author));
+            }
+        }
+
+        if (!publisher.equals("*"))
+        {
+            result = intersect(result, this.publishers.get(publisher));
+        }
+
+        return result;
+    }
+
+    /**
+     * Helper method for candidates(). Gathers the ISBNs of every book with a title word that contains the given word.
+     *
+     * @param word - A lower case word from the search title.
+     * @return The union of the posting lists of every indexed suffix that starts with the word.
+     */
+    private Set<String> titlePostings(String word)
+    {
+        Collection<HashSet<String>> postings = this.titleTokens.subMap(word, word + Character.MAX_VALUE).values();
+
+        if (postings.size() == 1)
+        {
+            return postings.iterator().next();
+        }
+
+        HashSet<String> union = new HashSet<>();
+        for (HashSet<String> posting : postings)
+        {
+            union.addAll(posting);
+        }
+        return union;
+    }
+
+    /**
+     * Helper method for candidates(). Intersects the running result with another posting list. The smaller of the two
+     * sets is always the one iterated.
+     *
+     * @param result - The current result, or null if nothing has narrowed the search yet.
+     * @param posting - The posting list to intersect with, or null if the token is not indexed.
+     * @return A new set holding the intersection of the two.
+     */
+    private static Set<String> intersect(Set<String> result, Set<String> posting)
+    {
+        if (posting == null)
+        {
+            return new HashSet<>();
+        }
+        if (result == null)
+        {
+            return new HashSet<>(posting);
+        }
+
+        Set<String> smaller = result.size() <= posting.size() ? result : posting;
+        Set<String> larger = smaller == result ? posting : result;
+
+        HashSet<String> intersection = new HashSet<>();
+        for (String isbn : smaller)
+        {
+            if (larger.contains(isbn))
+            {
+                intersection.add(isbn);
+            }
+        }
+        return intersection;
+    }
+
+    /**
+     * Helper method for removal. Takes an ISBN out of a posting list, dropping the list once it is empty.
+     *
+     * @param index - The index holding the posting list.
+     * @param token - The token of the posting list.
+     * @param isbn - The ISBN to remove.
+     */
+    private static void removePosting(Map<String, HashSet<String>> index, String token, String isbn)
+    {
+        HashSet<String> posting = index.get(token);
+        if (posting != null)
+        {
+            posting.remove(isbn);
+            if (posting.isEmpty())
+            {
+                index.remove(token);
+            }
+        }
+    }
+
+    /**
+     * Breaks a title into every suffix of each of its lower case words.
+     *
+     * @param title - The title to be tokenized.
+     * @return The title's word suffixes.
+     */
+    private static Set<String> titleSuffixes(String title)
+    {
+        HashSet<String> suffixes = new HashSet<>();
+        for (String word : words(title))
+        {
+            for (int i = 0; i < word.length(); i++)
+            {
+                suffixes.add(word.substring(i));
+            }
+        }
+        return suffixes;
+    }
+
+    /**
+     * Splits a string into its lower case words. Anything that is not a letter or digit separates words.
+     *
+     * @param text - The text to be split.
+     * @return The words of the text, in order.
+     */
+    static List<String> words(String text)
+    {
+        ArrayList<String> words = new ArrayList<>();
+        if (text == null)
+        {
+            return words;
+        }
+
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++)
+        {
+            boolean wordChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (wordChar && start < 0)
+            {
+                start = i;
+            }
+            else if (!wordChar && start >= 0)
+            {
+                words.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+                start = -1;
+            }
+        }
+        return words;
+    }
+}
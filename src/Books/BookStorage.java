@@ -1,11 +1,17 @@
 package Books;
 
+import Library.DailyStatistics;
 import Library.Library;
 
 import java.io.*;
 import java.util.ArrayList;
-import java.util.Calendar;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * The class that handles the libraries' internal storage of purchased library books. The library will interact with
@@ -21,14 +27,43 @@ public class BookStorage implements java.io.Serializable
      */
     private ArrayList<Purchase> purchases;
     /**
-     * Owned books that are currently stored in the library.
+     * Owned books that are currently stored in the library. Safe to read without holding the lock.
      */
-    private HashMap<String, Book> books;
+    private ConcurrentHashMap<String, Book> books;
+
+    /**
+     * Guards the record of purchases and the token index. Searches share the read lock, purchases and their undos take
+     * the write lock so the books map, the index and the statistics change together.
+     */
+    private ReentrantReadWriteLock lock;
+
+    /**
+     * Token index over the owned books, kept in step with the books map. Not persisted in storage, it is rebuilt when
+     * the storage is loaded.
+     */
+    private transient BookIndex index;
+
+    /**
+     * Number of books purchased each day, kept in step with the record of purchases. Not persisted in storage, it is
+     * rebuilt when the storage is loaded.
+     */
+    private transient DailyStatistics statistics;
+
+    /**
+     * Counter in the statistics for the number of books purchased.
+     */
+    private static final int BOOKS_PURCHASED = 0;
 
     /**
      * The results of the last book search performed.
      */
-    private ArrayList<Book> lastSearch;
+    private volatile ArrayList<Book> lastSearch;
+
+    /**
+     * The results of the last book search, keyed by ISBN. Not persisted in storage, it is rebuilt from the last search
+     * when the storage is loaded.
+     */
+    private transient volatile Map<String, Book> lastSearchIsbns;
 
     /**
      * Data file location for the serialization of the Library's storage.
@@ -42,21 +77,24 @@ public class BookStorage implements java.io.Serializable
     private transient Library library;
 
     /**
-     * Constructor for BookStorage. Initializes a new Book Storage with an empty book storage HashMap.
+     * Constructor for BookStorage. Initializes a new Book Storage with an empty book storage map.
      */
     public BookStorage(Library library)
     {
-        this.books = new HashMap<>();
+        this.books = new ConcurrentHashMap<>();
         this.purchases = new ArrayList<>();
+        this.lock = new ReentrantReadWriteLock();
         this.library = library;
+        this.index = new BookIndex();
+        this.statistics = new DailyStatistics(1);
     }
 
     /**
      * Simple getter method for external retrieval of the libraries' book storage.
      *
-     * @return A HashMap representing the current book storage of the library.
+     * @return A Map representing the current book storage of the library.
      */
-    public HashMap<String, Book> getBooks()
+    public Map<String, Book> getBooks()
     {
         return this.books;
     }
@@ -71,6 +109,55 @@ public class BookStorage implements java.io.Serializable
         return this.lastSearch;
     }
 
+    /**
+     * Finds the owned books with the given ISBNs. Each book is looked up directly, so the cost depends on the number of
+     * ISBNs rather than the number of owned books. ISBNs that are not owned are skipped, and a book is only included
+     * once no matter how many times its ISBN is given.
+     *
+     * @param isbns - The ISBNs of the books.
+     * @return The owned books, in the order their ISBNs were given.
+     */
+    public ArrayList<Book> resolveBooks(Collection<String> isbns)
+    {
+        ArrayList<Book> resolved = new ArrayList<>(isbns.size());
+        for (String isbn : isbns)
+        {
+            Book b = this.books.get(isbn);
+            if (b != null && !resolved.contains(b))
+            {
+                resolved.add(b);
+            }
+        }
+        return resolved;
+    }
+
+    /**
+     * Finds the books with the given ISBNs in the results of the last search. ISBNs that are not in the results are
+     * skipped.
+     *
+     * @param isbns - The ISBNs of the books.
+     * @return The books from the last search, one for each matching ISBN, in the order their ISBNs were given.
+     */
+    public ArrayList<Book> resolveLastSearch(Collection<String> isbns)
+    {
+        ArrayList<Book> resolved = new ArrayList<>(isbns.size());
+        Map<String, Book> results = this.lastSearchIsbns;
+        if (results == null)
+        {
+            return resolved;
+        }
+
+        for (String isbn : isbns)
+        {
+            Book b = results.get(isbn);
+            if (b != null)
+            {
+                resolved.add(b);
+            }
+        }
+        return resolved;
+    }
+
     /**
      * Given a list of purchased books and the associated quantity of purchased books, they are added to the book
      * storage. If the book already exists in the storage, the amount of copies owned by the library is increased.
@@ -78,49 +165,86 @@ public class BookStorage implements java.io.Serializable
      * @param purchasedBooks - An ArrayList representing the most recent purchase from the BookCatalog.
      * @param quantity - The amount of book copies purchased in the most recent transaction.
      */
-    public void addBooks(ArrayList<Book> purchasedBooks, int quantity, Calendar date)
+    public void addBooks(ArrayList<Book> purchasedBooks, int quantity, long date)
     {
-        this.purchases.add(new Purchase(purchasedBooks, quantity, date));
-        // Iterates over the supplied list of books
-        for(Book b : purchasedBooks)
+        this.lock.writeLock().lock();
+        try
         {
-            // Checks if the book exists in the storage already
-            if(this.books.containsKey(b.getIsbn()))
+            this.purchases.add(new Purchase(purchasedBooks, quantity, date));
+            this.statistics.add(BOOKS_PURCHASED, date, purchasedBooks.size() * quantity);
+            // Iterates over the supplied list of books
+            for(Book b : purchasedBooks)
             {
-                // If it does, then just add the newly purchased copies
-                this.books.get(b.getIsbn()).addCopies(quantity);
-            }
-            else
-            {
-                // Adds the book to the storage and increments the amount of owned books.
-                this.books.put(b.getIsbn(), b);
-                this.books.get(b.getIsbn()).addCopies(quantity);
+                // Checks if the book exists in the storage already
+                if(this.books.containsKey(b.getIsbn()))
+                {
+                    // If it does, then just add the newly purchased copies
+                    this.books.get(b.getIsbn()).addCopies(quantity);
+                }
+                else
+                {
+                    // Adds the book to the storage and increments the amount of owned books.
+                    this.books.put(b.getIsbn(), b);
+                    this.index.add(b);
+                    this.books.get(b.getIsbn()).addCopies(quantity);
+                }
             }
         }
+        finally
+        {
+            this.lock.writeLock().unlock();
+        }
     }
 
     /**
-     * This method removes books from the book storage. This is for undo purposes
+     * This method removes books from the book storage. This is for undo purposes. Books left without any copies are
+     * taken out of the storage and the index.
      * @param books - arraylist of book ISBNs
      * @param quantity - quantity of each book to remove
      */
     public void removeBooks(ArrayList<Book> books, int quantity)
     {
-        for(Purchase p : this.purchases)
+        this.lock.writeLock().lock();
+        try
         {
-            if(p.getPurchasedBooks().equals(books))
+            Iterator<Purchase> purchaseIterator = this.purchases.iterator();
+            while (purchaseIterator.hasNext())
             {
-                this.purchases.remove(p);
-                for(Book b : p.getPurchasedBooks())
+                Purchase p = purchaseIterator.next();
+                if(p.getPurchasedBooks().equals(books))
                 {
-                    this.books.get(b).removeCopies(quantity);
+                    purchaseIterator.remove();
+                    this.statistics.add(BOOKS_PURCHASED, p.getPurchaseDate(),
+                            -p.getPurchasedBooks().size() * p.getQuantity());
+                    for(Book b : p.getPurchasedBooks())
+                    {
+                        Book owned = this.books.get(b.getIsbn());
+                        if (owned == null)
+                        {
+                            continue;
+                        }
+
+                        owned.removeCopies(quantity);
+                        if (owned.getNumCopies() <= 0)
+                        {
+                            this.books.remove(owned.getIsbn());
+                            this.index.remove(owned);
+                        }
+                    }
+                    break;
                 }
             }
         }
+        finally
+        {
+            this.lock.writeLock().unlock();
+        }
     }
 
     /**
-     * Given a set of user search criteria, returns the books that meet the supplied criteria.
+     * Given a set of user search criteria, returns the books that meet the supplied criteria. The title, author and
+     * publisher criteria are resolved through the token index and the ISBN through the books map, so only books that
+     * can match are ever visited.
      *
      * @param title - The title of the desired book(s).
      * @param authors - The authors of the desired book(s).
@@ -132,172 +256,144 @@ public class BookStorage implements java.io.Serializable
     {
         // ArrayList of books that meet the current search criteria
         ArrayList<Book> searchBooks = new ArrayList<>();
-        // Loop to iterate all of the supplied search criteria.
-        for(int step=1; step<=5; step++)
+
+        this.lock.readLock().lock();
+        try
+        {
+            if (isbn.equals("*"))
+            {
+                Set<String> candidates = this.index.candidates(title, authors, publisher);
+
+                if (candidates == null)
+                {
+                    // Nothing narrows the search, every book is a candidate
+                    for (Book b : this.books.values())
+                    {
+                        searchStep(b, title, authors, publisher, searchBooks);
+                    }
+                }
+                else
+                {
+                    for (String candidate : candidates)
+                    {
+                        searchStep(this.books.get(candidate), title, authors, publisher, searchBooks);
+                    }
+                }
+            }
+            else
+            {
+                searchStep(this.books.get(isbn), title, authors, publisher, searchBooks);
+            }
+        }
+        finally
+        {
+            this.lock.readLock().unlock();
+        }
+
+        int tempID = 1;
+        for (Book b : searchBooks)
         {
-            searchBooks = searchStep(step, title, authors, isbn, publisher, searchBooks);
+            b.setTempID(tempID++);
         }
 
+        lastSearchIsbns = byIsbn(searchBooks);
         lastSearch = searchBooks;
         return searchBooks;
     }
 
     /**
-     * Helper method for bookSearch(). Creates an ArrayList with the applicable books at each step of the search
-     * criteria process.
+     * Helper method for bookSearch(). Checks a single candidate book against the supplied search criteria and adds it
+     * to the search results if it meets all of them.
      *
-     * @param step - The current level of search criteria being processed.
+     * @param book - The candidate book, or null if there is none.
      * @param title - The title of the desired book(s).
      * @param authors - The authors of the desired book(s).
-     * @param isbn - The ISBN of the desired book(s).
      * @param publisher - The publisher of the desired book(s).
-     * @param prevSearchBooks - The ArrayList of books that were gathered from the previous search step.
-     * @return An ArrayList representing the applicable books for the current supplied search criteria.
+     * @param searchBooks - The ArrayList of books that met the search criteria so far.
      */
-    private ArrayList<Book> searchStep(int step, String title, ArrayList<String> authors, String isbn, String publisher, ArrayList<Book> prevSearchBooks)
+    private void searchStep(Book book, String title, ArrayList<String> authors, String publisher, ArrayList<Book> searchBooks)
     {
-        ArrayList<Book> newSearchBooks = new ArrayList<>();
-        int tempID = 1;
-
-        if(step == 1)
+        if (book == null)
         {
-            if(title.equals("*"))
-            {
-                for (Book b : this.books.values())
-                {
-                    b.setTempID(tempID++);
-                    prevSearchBooks.add(b);
-                }
-            }
-            else
-            {
-                for (Book b : this.books.values())
-                {
-                    if(b.getTitle().contains(title))
-                    {
-                        b.setTempID(tempID++);
-                        prevSearchBooks.add(b);
-                    }
-                }
-            }
-            return prevSearchBooks;
+            return;
         }
-        else if(step == 2)
+
+        if (!title.equals("*") && !book.getTitle().contains(title))
         {
-            if(authors.contains("*"))
-            {
-                return prevSearchBooks;
-            }
-            else
-            {
-                for (Book b : prevSearchBooks)
-                {
-                    // Might not work as we want it. This will return TRUE if the stored book has ALL of the authors
-                    // that the command supplies.
-                    if(b.getAuthor().containsAll(authors))
-                    {
-                        b.setTempID(tempID++);
-                        newSearchBooks.add(b);
-                    }
-                }
-            }
-            return newSearchBooks;
+            return;
         }
-        else if(step == 3)
+
+        // Might not work as we want it. This will return TRUE if the stored book has ALL of the authors
+        // that the command supplies.
+        if (!authors.contains("*") && !book.getAuthor().containsAll(authors))
         {
-            if(isbn.equals("*"))
-            {
-                return prevSearchBooks;
-            }
-            else
-            {
-                for(Book b : prevSearchBooks)
-                {
-                    if(b.getIsbn() == isbn)
-                    {
-                        b.setTempID(tempID++);
-                        newSearchBooks.add(b);
-                    }
-                }
-            }
-            return newSearchBooks;
+            return;
         }
-        else if(step == 4)
+
+        if (!publisher.equals("*") && !publisher.equals(book.getPublisher()))
         {
-            if(publisher.equals("*"))
-            {
-                return prevSearchBooks;
-            }
-            else
-            {
-                for (Book b : prevSearchBooks)
-                {
-                    if(b.getPublisher() == publisher)
-                    {
-                        b.setTempID(tempID++);
-                        newSearchBooks.add(b);
-                    }
-                }
-            }
-            return newSearchBooks;
+            return;
         }
-        else
+
+        searchBooks.add(book);
+    }
+
+    /**
+     * Adds every owned book to a fresh token index. Used when the storage is loaded, since the index is not persisted.
+     */
+    private void indexBooks()
+    {
+        this.index = new BookIndex();
+        for (Book b : this.books.values())
         {
-            return prevSearchBooks;
+            this.index.add(b);
         }
     }
 
     /**
-     * Helper method for report generation.
-     * Filters the purchase list by purchased date for a given number of days
-     * in the past.
+     * Keys a list of books by ISBN. The first book with an ISBN wins.
      *
-     * @param days - number of days in the past to collect data
-     * @return list of filtered purchases
+     * @param books - The books to key, or null.
+     * @return The books keyed by ISBN, or null if there were no books.
      */
-    private ArrayList<Purchase> getFilteredPurchases(int days)
+    private static Map<String, Book> byIsbn(ArrayList<Book> books)
     {
-        if (days == 0)
+        if (books == null)
         {
-            return new ArrayList<>(this.purchases);
+            return null;
         }
 
-        ArrayList<Purchase> filteredVisitors = new ArrayList<>();
-
-        for (Purchase purchase: this.purchases)
+        HashMap<String, Book> keyed = new HashMap<>(books.size() * 2);
+        for (Book b : books)
         {
-            // Calculate the date range
-            Calendar startDate = this.library.getTime();
-            startDate.add(Calendar.DAY_OF_YEAR, -days);
-
-            if (purchase.getPurchaseDate().after(startDate))
-            {
-                filteredVisitors.add(purchase);
-            }
+            keyed.putIfAbsent(b.getIsbn(), b);
         }
+        return keyed;
+    }
 
-        return filteredVisitors;
+    /**
+     * Adds every purchase to fresh statistics. Used when the storage is loaded, since the statistics are not persisted.
+     */
+    private void countPurchases()
+    {
+        this.statistics = new DailyStatistics(1);
+        for (Purchase p : this.purchases)
+        {
+            this.statistics.add(BOOKS_PURCHASED, p.getPurchaseDate(), p.getPurchasedBooks().size() * p.getQuantity());
+        }
     }
 
     /**
      * Helper method for report generation.
-     * Calculates the number of books purchased for a given date range.
+     * Calculates the number of books purchased for a given date range, from the running statistics.
      *
      * @param days - number of days in the past to collect data
      * @return number of books purchased
      */
     private int getTotalBooks(int days)
     {
-        int numBooks = 0;
-
-        ArrayList<Purchase> filteredPurchases = this.getFilteredPurchases(days);
-
-        for (Purchase purchase: filteredPurchases)
-        {
-            numBooks += purchase.getPurchasedBooks().size() * purchase.getQuantity();
-        }
-
-        return numBooks;
+        long now = days == 0 ? 0 : this.library.getTime();
+        return (int) this.statistics.sum(BOOKS_PURCHASED, now, days);
     }
 
     /**
@@ -314,6 +410,45 @@ public class BookStorage implements java.io.Serializable
         return reportString;
     }
 
+    /**
+     * Sets the library object for this BookStorage and rebuilds the token index and statistics.
+     * Used upon deserialization to link with Library's TimeClock.
+     *
+     * @param library - Library object to link with the BookStorage.
+     */
+    public void setLibrary(Library library)
+    {
+        this.library = library;
+        this.indexBooks();
+        this.countPurchases();
+        this.lastSearchIsbns = byIsbn(this.lastSearch);
+    }
+
+    /**
+     * Gets the record of purchases, in the order they were made.
+     *
+     * @return The record of purchases.
+     */
+    ArrayList<Purchase> getPurchases()
+    {
+        return this.purchases;
+    }
+
+    /**
+     * Replaces the contents of the storage with books and purchases loaded from a snapshot, and rebuilds the index and
+     * statistics.
+     *
+     * @param books - The owned books, keyed by ISBN.
+     * @param purchases - The record of purchases.
+     */
+    void restore(ConcurrentHashMap<String, Book> books, ArrayList<Purchase> purchases)
+    {
+        this.books = books;
+        this.purchases = purchases;
+        this.indexBooks();
+        this.countPurchases();
+    }
+
     /**
      * Serialize the entire book storage and save it to a text file.
      */
@@ -348,6 +483,7 @@ public class BookStorage implements java.io.Serializable
 
             // Initialize storage from data
             BookStorage bookStorage = (BookStorage) in.readObject();
+            bookStorage.setLibrary(library);
 
             // Close the streams and return
             in.close();
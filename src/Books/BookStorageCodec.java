@@ -0,0 +1,159 @@
+package Books;
+
+import Library.Library;
+import Library.SnapshotReader;
+import Library.SnapshotWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Encodes a BookStorage as columns of a binary snapshot. Books are stored one column per field, with the authors of
+ * every book flattened into a single column, and purchases refer back to their books by ISBN.
+ *
+ * @author Jake Bashaw
+ */
+public class BookStorageCodec
+{
+    /**
+     * Writes the owned books and the record of purchases of a book storage.
+     *
+     * @param bookStorage - The book storage to write.
+     * @param out - The snapshot being written.
+     */
+    public static void write(BookStorage bookStorage, SnapshotWriter out) throws IOException
+    {
+        ArrayList<Book> books = new ArrayList<>(bookStorage.getBooks().values());
+        int count = books.size();
+
+        String[] isbns = new String[count];
+        String[] titles = new String[count];
+        int[] authorCounts = new int[count];
+        String[] publishers = new String[count];
+        String[] publishDates = new String[count];
+        int[] pageCounts = new int[count];
+        int[] numCopies = new int[count];
+        int[] availableCopies = new int[count];
+        ArrayList<String> authors = new ArrayList<>();
+
+        for (int i = 0; i < count; i++)
+        {
+            Book b = books.get(i);
+            isbns[i] = b.getIsbn();
+            titles[i] = b.getTitle();
+            authorCounts[i] = b.getAuthor().size();
+            authors.addAll(b.getAuthor());
+            publishers[i] = b.getPublisher();
+            publishDates[i] = b.getPublishDate();
+            pageCounts[i] = b.getPageCount();
+            numCopies[i] = b.getNumCopies();
+            availableCopies[i] = b.getAvailableCopies();
+        }
+
+        out.writeStrings(isbns);
+        out.writeStrings(titles);
+        out.writeInts(authorCounts);
+        out.writeStrings(authors.toArray(new String[0]));
+        out.writeStrings(publishers);
+        out.writeStrings(publishDates);
+        out.writeInts(pageCounts);
+        out.writeInts(numCopies);
+        out.writeInts(availableCopies);
+
+        List<Purchase> purchases = bookStorage.getPurchases();
+        int[] quantities = new int[purchases.size()];
+        long[] dates = new long[purchases.size()];
+        int[] bookCounts = new int[purchases.size()];
+        ArrayList<String> purchasedIsbns = new ArrayList<>();
+
+        for (int i = 0; i < purchases.size(); i++)
+        {
+            Purchase p = purchases.get(i);
+            quantities[i] = p.getQuantity();
+            dates[i] = p.getPurchaseDate();
+            bookCounts[i] = p.getPurchasedBooks().size();
+            for (Book b : p.getPurchasedBooks())
+            {
+                purchasedIsbns.add(b.getIsbn());
+            }
+        }
+
+        out.writeInts(quantities);
+        out.writeLongs(dates);
+        out.writeInts(bookCounts);
+        out.writeStrings(purchasedIsbns.toArray(new String[0]));
+    }
+
+    /**
+     * Reads a book storage written by write().
+     *
+     * @param in - The snapshot being read.
+     * @param library - The library the storage belongs to.
+     * @return The book storage.
+     */
+    public static BookStorage read(SnapshotReader in, Library library)
+    {
+        String[] isbns = in.readStrings();
+        String[] titles = in.readStrings();
+        int[] authorCounts = in.readInts();
+        String[] authors = in.readStrings();
+        String[] publishers = in.readStrings();
+        String[] publishDates = in.readStrings();
+        int[] pageCounts = in.readInts();
+        int[] numCopies = in.readInts();
+        int[] availableCopies = in.readInts();
+
+        ConcurrentHashMap<String, Book> books = new ConcurrentHashMap<>(isbns.length * 2);
+        int author = 0;
+        for (int i = 0; i < isbns.length; i++)
+        {
+            List<String> bookAuthors = Arrays.asList(Arrays.copyOfRange(authors, author, author + authorCounts[i]));
+            author += authorCounts[i];
+
+            Book b = new Book(isbns[i], titles[i], bookAuthors, publishers[i], publishDates[i], pageCounts[i]);
+            b.restoreCopies(numCopies[i], availableCopies[i]);
+            books.put(b.getIsbn(), b);
+        }
+
+        int[] quantities = in.readInts();
+        long[] dates = in.readLongs();
+        int[] bookCounts = in.readInts();
+        String[] purchasedIsbns = in.readStrings();
+
+        ArrayList<Purchase> purchases = new ArrayList<>(quantities.length);
+        int purchased = 0;
+        for (int i = 0; i < quantities.length; i++)
+        {
+            ArrayList<Book> purchasedBooks = new ArrayList<>(bookCounts[i]);
+            for (int j = 0; j < bookCounts[i]; j++)
+            {
+                purchasedBooks.add(resolve(books, purchasedIsbns[purchased++]));
+            }
+            purchases.add(new Purchase(purchasedBooks, quantities[i], dates[i]));
+        }
+
+        BookStorage bookStorage = new BookStorage(library);
+        bookStorage.restore(books, purchases);
+        return bookStorage;
+    }
+
+    /**
+     * Finds an owned book by ISBN. A book that is no longer owned keeps only its ISBN.
+     *
+     * @param books - The owned books.
+     * @param isbn - The ISBN of the book.
+     * @return The owned book, or a placeholder for it.
+     */
+    public static Book resolve(Map<String, Book> books, String isbn)
+    {
+        Book b = books.get(isbn);
+        if (b == null)
+        {
+            b = new Book(isbn, "", new ArrayList<>(), "", "", 0);
+        }
+        return b;
+    }
+}
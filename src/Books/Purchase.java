@@ -1,7 +1,6 @@
 package Books;
 
 import java.util.ArrayList;
-import java.util.Calendar;
 import java.util.Date;
 
 /**
@@ -14,7 +13,7 @@ public class Purchase implements java.io.Serializable
 {
     private int quantity;
     private ArrayList<Book> purchasedBooks;
-    private Calendar purchaseDate;
+    private long purchaseDate;
 
     /**
      * Constructor for the creation of a book purchase.
@@ -23,7 +22,7 @@ public class Purchase implements java.io.Serializable
      * @param quantity - The amount of copies that were purchased for each book
      * @param purchaseDate - The date on which the books were purchased.
      */
-    public Purchase(ArrayList<Book> purchasedBooks, int quantity, Calendar purchaseDate)
+    public Purchase(ArrayList<Book> purchasedBooks, int quantity, long purchaseDate)
     {
         this.purchasedBooks = purchasedBooks;
         this.quantity = quantity;
@@ -50,9 +49,9 @@ public class Purchase implements java.io.Serializable
 
     /**
      * Get the date of this purchase
-     * @return a calendar object
+     * @return the date in milliseconds since the epoch
      */
-    public Calendar getPurchaseDate() {
+    public long getPurchaseDate() {
         return this.purchaseDate;
     }
 }
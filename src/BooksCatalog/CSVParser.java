@@ -2,20 +2,38 @@ package BooksCatalog;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
-import java.util.List;
 import java.util.Arrays;
-import java.util.Scanner;
+import java.util.List;
+import java.util.function.Consumer;
 import Books.Book;
 
 /**
  * The CSV Parser handles loading in the books from the books.txt file, into local storage. The stored catalog can later
  * be used to purchase new books for the library.
  *
+ * Files are streamed through a fixed size character buffer and each book is handed to a callback as soon as its line
+ * has been read, so the parser itself holds no more than one line of the file at a time.
+ *
  * @author Tyler Reimold
  */
 public class CSVParser
 {
+    /**
+     * Size of the character buffer the file is read through.
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
     /**
      * It loads the file onto its ArrayList or else it gets the FileNotFoundException again.
      *
@@ -25,84 +43,175 @@ public class CSVParser
     public static ArrayList<Book> load(File file) throws FileNotFoundException
     {
         ArrayList<Book> books = new ArrayList<>();
-        Scanner s = new Scanner(file);
-        Boolean inQuotes = false;
-        while(s.hasNext())
+        try
         {
-           String line = s.nextLine();
-           String isbn = "";
-           String title = "";
-           List<String> authors = null;
-           String publisher = "";
-           String publishDate = "";
-           int pageCount = 0;
-           String temp = "";
-           int step = 0;
-           for(char ch: line.toCharArray())
-           {
-               if(inQuotes)
-               {
-                   if (ch == '\"' || ch == '{' || ch == '}')
-                   {
-                       inQuotes = false;
-                   }
-                   else
-                   {
-                       temp = temp + ch;
-                   }
-               }
-               else
-               {
-                   if(ch == '\"' || ch == '{' || ch == '}')
-                   {
-                       inQuotes = true;
-                   }
-                   else if(ch == ',')
-                   {
-                       if(step == 0)
-                       {
-                           isbn = temp;
-                           temp = "";
-                           step++;
-                       }
-                       else if(step == 1)
-                       {
-                           title = temp;
-                           temp = "";
-                           step++;
-                       }
-                       else if(step == 2)
-                       {
-                           String[] newlist = temp.substring(0,temp.length()).split(",");
-                           authors = Arrays.asList(newlist);
-                           temp = "";
-                           step++;
-                       }
-                       else if(step == 3)
-                       {
-                           publisher = temp;
-                           temp = "";
-                           step++;
-                       }
-                       else if(step == 4)
-                       {
-                           publishDate = temp;
-                           temp = "";
-                           step++;
-                       }
-                   }
-                   else
-                   {
-                       temp = temp + ch;
-                   }
-               }
-           }
-            pageCount = Integer.parseInt(temp);
-            books.add(new Book(isbn, title, authors, publisher, publishDate, pageCount));
+            parse(file.toPath(), books::add);
+        }
+        catch (NoSuchFileException error)
+        {
+            throw new FileNotFoundException(file.getPath());
+        }
+        catch (IOException error)
+        {
+            throw new UncheckedIOException(error);
         }
         return books;
     }
 
+    /**
+     * Streams a catalog file of any size through a buffered file channel, handing each book to the consumer as soon as
+     * it has been read. Heap use does not grow with the size of the file.
+     *
+     * @param file - The file that contains the books in the required format.
+     * @param consumer - The callback each parsed book is handed to.
+     * @return The number of books parsed.
+     */
+    public static long parse(Path file, Consumer<Book> consumer) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+             Reader reader = Channels.newReader(channel, StandardCharsets.UTF_8.newDecoder()
+                     .onMalformedInput(CodingErrorAction.REPLACE)
+                     .onUnmappableCharacter(CodingErrorAction.REPLACE), BUFFER_SIZE))
+        {
+            return parse(reader, consumer);
+        }
+    }
+
+    /**
+     * Streams books out of a reader, handing each book to the consumer as soon as its line has been read. The reader is
+     * consumed through a fixed size buffer and is not closed.
+     *
+     * @param reader - The source of the books in the required format.
+     * @param consumer - The callback each parsed book is handed to.
+     * @return The number of books parsed.
+     */
+    public static long parse(Reader reader, Consumer<Book> consumer) throws IOException
+    {
+        char[] buffer = new char[BUFFER_SIZE];
+        StringBuilder temp = new StringBuilder(128);
+        String[] fields = new String[5];
+        Arrays.fill(fields, "");
+        List<String> authors = null;
+        boolean inQuotes = false;
+        boolean blankLine = true;
+        int step = 0;
+        long count = 0;
+
+        int read;
+        while ((read = reader.read(buffer)) != -1)
+        {
+            for (int i = 0; i < read; i++)
+            {
+                char ch = buffer[i];
+
+                if (ch == '\n' || ch == '\r')
+                {
+                    if (!blankLine)
+                    {
+                        consumer.accept(new Book(fields[0], fields[1], authors, fields[3], fields[4], parsePageCount(temp)));
+                        count++;
+                    }
+
+                    temp.setLength(0);
+                    Arrays.fill(fields, "");
+                    authors = null;
+                    inQuotes = false;
+                    blankLine = true;
+                    step = 0;
+                }
+                else if (ch == '\"' || ch == '{' || ch == '}')
+                {
+                    inQuotes = !inQuotes;
+                    blankLine = false;
+                }
+                else if (ch == ',' && !inQuotes)
+                {
+                    if (step == 2)
+                    {
+                        authors = splitAuthors(temp);
+                    }
+                    else if (step < 5)
+                    {
+                        fields[step] = temp.toString();
+                    }
+
+                    if (step < 5)
+                    {
+                        temp.setLength(0);
+                        step++;
+                    }
+                    blankLine = false;
+                }
+                else
+                {
+                    temp.append(ch);
+                    blankLine &= Character.isWhitespace(ch);
+                }
+            }
+        }
+
+        // The last line of the file may not end with a line break
+        if (!blankLine)
+        {
+            consumer.accept(new Book(fields[0], fields[1], authors, fields[3], fields[4], parsePageCount(temp)));
+            count++;
+        }
+
+        return count;
+    }
+
+    /**
+     * Helper method for parse(). Splits the comma separated authors field without copying it first.
+     *
+     * @param field - The characters of the authors field.
+     * @return The list of authors.
+     */
+    private static List<String> splitAuthors(CharSequence field)
+    {
+        ArrayList<String> authors = new ArrayList<>(2);
+        int start = 0;
+        for (int i = 0; i <= field.length(); i++)
+        {
+            if (i == field.length() || field.charAt(i) == ',')
+            {
+                authors.add(field.subSequence(start, i).toString());
+                start = i + 1;
+            }
+        }
+        return authors;
+    }
+
+    /**
+     * Helper method for parse(). Reads the page count out of the last field of a line without creating a String.
+     *
+     * @param field - The characters of the page count field.
+     * @return The page count.
+     */
+    private static int parsePageCount(CharSequence field)
+    {
+        int pageCount = 0;
+        boolean digits = false;
+        for (int i = 0; i < field.length(); i++)
+        {
+            char ch = field.charAt(i);
+            if (ch >= '0' && ch <= '9')
+            {
+                pageCount = pageCount * 10 + (ch - '0');
+                digits = true;
+            }
+            else if (!Character.isWhitespace(ch))
+            {
+                throw new NumberFormatException("For input string: \"" + field + "\"");
+            }
+        }
+
+        if (!digits)
+        {
+            throw new NumberFormatException("For input string: \"" + field + "\"");
+        }
+        return pageCount;
+    }
+
     /**
      * Main method for testing.
      */
@@ -111,7 +220,7 @@ public class CSVParser
         File file = new File("files/books.txt");
         try
         {
-            load(file);
+            System.out.println(load(file).size() + " books loaded.");
         }
         catch(FileNotFoundException error)
         {
@@ -119,5 +228,3 @@ public class CSVParser
         }
     }
 }
-
-
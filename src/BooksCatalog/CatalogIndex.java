@@ -0,0 +1,170 @@
+package BooksCatalog;
+
+import Books.Book;
+import Books.BookIndex;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A read-only, indexed view of a flat file book catalog. Each catalog file is parsed and indexed once, and the resulting
+ * index is shared by every client searching that file. Nothing is modified after construction, so any number of
+ * clients can search it at the same time without locking.
+ *
+ * @author Tyler Reimold
+ */
+public class CatalogIndex
+{
+    /**
+     * Indexes that have already been loaded, keyed by the absolute path of their catalog file.
+     */
+    private static final Map<String, CatalogIndex> loaded = new ConcurrentHashMap<>();
+
+    private final List<Book> books;
+    private final Map<String, Book> isbns;
+    private final BookIndex index;
+
+    /**
+     * Constructor for a CatalogIndex. Builds the ISBN table and the title and author indexes over the given books.
+     *
+     * @param books - The books of the catalog.
+     */
+    private CatalogIndex(List<Book> books)
+    {
+        HashMap<String, Book> isbns = new HashMap<>();
+        BookIndex index = new BookIndex();
+        for (Book b : books)
+        {
+            isbns.put(b.getIsbn(), b);
+            index.add(b);
+        }
+
+        this.books = Collections.unmodifiableList(new ArrayList<>(books));
+        this.isbns = Collections.unmodifiableMap(isbns);
+        this.index = index;
+    }
+
+    /**
+     * Gets the shared index of a catalog file, parsing the file the first time it is requested.
+     *
+     * @param file - The static file that contains all of the books in the required format.
+     * @return The shared index of the catalog file.
+     */
+    public static CatalogIndex forFile(File file) throws FileNotFoundException
+    {
+        String key = file.getAbsolutePath();
+        CatalogIndex catalog = loaded.get(key);
+
+        if (catalog == null)
+        {
+            // Parsed outside of the map so a missing file is not cached; a racing load just loses the put
+            CatalogIndex parsed = new CatalogIndex(CSVParser.load(file));
+            catalog = loaded.putIfAbsent(key, parsed);
+            if (catalog == null)
+            {
+                catalog = parsed;
+            }
+        }
+        return catalog;
+    }
+
+    /**
+     * Gets an index over no books, for use when a catalog file cannot be read.
+     *
+     * @return An empty CatalogIndex.
+     */
+    public static CatalogIndex empty()
+    {
+        return new CatalogIndex(new ArrayList<>());
+    }
+
+    /**
+     * Given a set of user search criteria, returns the books that meet the supplied criteria. The catalog's own books
+     * are never handed out; every result is a copy, so callers are free to number and purchase them.
+     *
+     * @param title - The title of the desired book(s).
+     * @param authors - The authors of the desired book(s).
+     * @param isbn - The ISBN of the desired book(s)
+     * @param publisher - The publisher of the desired book(s).
+     * @return An ArrayList of copies of the applicable books, numbered by temporary id.
+     */
+    public ArrayList<Book> search(String title, List<String> authors, String isbn, String publisher)
+    {
+        ArrayList<Book> searchBooks = new ArrayList<>();
+
+        if (!isbn.equals("*"))
+        {
+            addIfMatches(this.isbns.get(isbn), title, authors, publisher, searchBooks);
+        }
+        else
+        {
+            Set<String> candidates = this.index.candidates(title, authors, publisher);
+            if (candidates == null)
+            {
+                for (Book b : this.books)
+                {
+                    addIfMatches(b, title, authors, publisher, searchBooks);
+                }
+            }
+            else
+            {
+                for (String candidate : candidates)
+                {
+                    addIfMatches(this.isbns.get(candidate), title, authors, publisher, searchBooks);
+                }
+            }
+        }
+
+        return searchBooks;
+    }
+
+    /**
+     * Helper method for search(). Checks a single candidate book against the search criteria and adds a numbered copy
+     * of it to the results if it meets all of them.
+     *
+     * @param book - The candidate book, or null if there is none.
+     * @param title - The title of the desired book(s).
+     * @param authors - The authors of the desired book(s).
+     * @param publisher - The publisher of the desired book(s).
+     * @param searchBooks - The results so far.
+     */
+    private static void addIfMatches(Book book, String title, List<String> authors, String publisher, ArrayList<Book> searchBooks)
+    {
+        if (book == null)
+        {
+            return;
+        }
+        if (!title.equals("*") && !book.getTitle().contains(title))
+        {
+            return;
+        }
+        if (!authors.contains("*") && !book.getAuthor().containsAll(authors))
+        {
+            return;
+        }
+        if (!publisher.equals("*") && !publisher.equals(book.getPublisher()))
+        {
+            return;
+        }
+
+        Book result = new Book(book);
+        result.setTempID(searchBooks.size() + 1);
+        searchBooks.add(result);
+    }
+
+    /**
+     * Simple getter method for the number of books in the catalog.
+     *
+     * @return The number of books in the catalog.
+     */
+    public int size()
+    {
+        return this.books.size();
+    }
+}
@@ -1,19 +1,58 @@
 package BooksCatalog;
 
 import Books.Book;
-import javax.json.*;
-import java.io.*;
-import java.net.HttpURLConnection;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * the class that handles the GoogleBooks API
  */
 public class GoogleBooks implements BookCatalog
 {
-    private final String USER_AGENT = "Mozilla/5.0";
+    private GoogleBooksClient client;
+
+    /**
+     * Creates a catalog backed by the Google Books service.
+     */
+    public GoogleBooks()
+    {
+        this(GoogleBooksClient.DEFAULT_URI);
+    }
+
+    /**
+     * Creates a catalog backed by a volumes service at another address, such as a local stub for testing.
+     *
+     * @param serviceUri - The address of the volumes service.
+     */
+    public GoogleBooks(URI serviceUri)
+    {
+        this(GoogleBooksClient.forUri(serviceUri));
+    }
+
+    /**
+     * Creates a catalog backed by a given client.
+     *
+     * @param client - The client of the volumes service.
+     */
+    GoogleBooks(GoogleBooksClient client)
+    {
+        this.client = client;
+    }
 
     /**
      * This method overrides the regular book search method and get the books from Google
@@ -21,140 +60,140 @@ public class GoogleBooks implements BookCatalog
      * @param authors - The author of the books(s) that is being searched for.
      * @param isbn - The ISBN of the book(s) being searched for.
      * @param publisher - The publisher of the book(s) that is being searched for.
-     * @return
+     * @return The books found, or none if the service could not be reached.
      */
     @Override
     public ArrayList<Book> bookSearch(String title, ArrayList<String> authors, String isbn, String publisher)
     {
-        ArrayList<Book> books = new ArrayList<>();
-        String requestString = "";
-        if(!title.equals("*"))
+        try
         {
-            requestString = requestString + "intitle:" + title;
+            return this.bookSearchAsync(title, authors, isbn, publisher).join();
         }
-        if(!isbn.equals("*"))
+        catch (CompletionException | CancellationException e)
         {
-            requestString = requestString + "+isbn:" + isbn;
+            System.out.println("System throws exception." + (e.getCause() != null ? e.getCause() : e));
+            return new ArrayList<>();
         }
-        if(!publisher.equals("*"))
+    }
+
+    /**
+     * Searches for books without waiting for the service.
+     *
+     * @param title - The title of the book(s) that is being searched for.
+     * @param authors - The author of the books(s) that is being searched for.
+     * @param isbn - The ISBN of the book(s) being searched for.
+     * @param publisher - The publisher of the book(s) that is being searched for.
+     * @return The books found, numbered by temporary id, once the search completes.
+     */
+    public CompletableFuture<ArrayList<Book>> bookSearchAsync(String title, List<String> authors, String isbn, String publisher)
+    {
+        String query = GoogleBooksClient.query(title, authors, isbn, publisher);
+        return this.client.search(query).thenApply(GoogleBooks::numberedCopies);
+    }
+
+    /**
+     * Copies the books of a search, which may be cached and shared, so callers are free to number and purchase them.
+     *
+     * @param books - The books found.
+     * @return Numbered copies of the books.
+     */
+    private static ArrayList<Book> numberedCopies(List<Book> books)
+    {
+        ArrayList<Book> copies = new ArrayList<>(books.size());
+        for (Book book : books)
         {
-            requestString = requestString + "+inpublisher:" + publisher;
+            Book copy = new Book(book);
+            copy.setTempID(copies.size() + 1);
+            copies.add(copy);
         }
-        if(! authors.contains("*") || ! authors.isEmpty())
+        return copies;
+    }
+
+    /**
+     * Main method for testing. Searches a local stub of the volumes service rather than Google.
+     */
+    public static void main(String args[]) throws IOException
+    {
+        String volume = "{\"items\":[{\"saleInfo\":{\"country\":\"US\",\"saleability\":\"FOR_SALE\"},"
+                + "\"volumeInfo\":{\"title\":\"The Communist Manifesto\",\"authors\":[\"Karl Marx\"],"
+                + "\"publisher\":\"Penguin\",\"publishedDate\":\"2002\",\"pageCount\":288,"
+                + "\"industryIdentifiers\":[{\"type\":\"ISBN_13\",\"identifier\":\"9780140447576\"}]}}]}";
+        Map<String, AtomicInteger> requests = new ConcurrentHashMap<>();
+
+        // Answers every search with one book, except that the first "fail" search gets an error and a "stall"
+        // search never finishes its body
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        ExecutorService handlers = Executors.newCachedThreadPool();
+        server.setExecutor(handlers);
+        server.createContext("/volumes", exchange ->
         {
-            for (String s : authors)
+            String query = exchange.getRequestURI().getQuery();
+            int count = requests.computeIfAbsent(query, q -> new AtomicInteger()).incrementAndGet();
+            byte[] body = volume.getBytes(StandardCharsets.UTF_8);
+            if (query.contains("fail") && count == 1)
             {
-                requestString = requestString + "+inauthor:" + s;
+                exchange.sendResponseHeaders(500, -1);
             }
-        }
-        requestString = "https://www.googleapis.com/books/v1/volumes?q=" + requestString + "&maxResults=40";
-        try
-        {
-            URI uri = new URI(requestString.replace(" ", "%20"));
-            HttpURLConnection con = (HttpURLConnection) uri.toURL().openConnection();
-            // optional default is GET
-            con.setRequestMethod("GET");
-            //add request header
-            con.setRequestProperty("User-Agent", USER_AGENT);
-            BufferedReader in = new BufferedReader(new InputStreamReader(con.getInputStream()));
-            String inputLine;
-            StringBuffer response = new StringBuffer();
-
-            while ((inputLine = in.readLine()) != null)
+            else if (query.contains("stall"))
             {
-                response.append(inputLine);
+                exchange.sendResponseHeaders(200, body.length);
+                exchange.getResponseBody().write(body, 0, 10);
+                exchange.getResponseBody().flush();
+                try
+                {
+                    Thread.sleep(60_000);
+                }
+                catch (InterruptedException ie)
+                {
+                    // The test is over
+                }
             }
-
-            in.close();
-            con.disconnect();
-            JsonReader jsonReader = Json.createReader(new StringReader(response.toString()));
-            JsonObject jsonBooks = jsonReader.readObject();
-            jsonReader.close();
-            int tempId = 1;
-
-            for (JsonObject o:jsonBooks.getJsonArray("items").getValuesAs(JsonObject.class))
+            else
             {
-                if(o.getJsonObject("saleInfo").getJsonString("country").toString().equals("\"US\"")
-                        && o.getJsonObject("saleInfo").getJsonString("saleability").toString().equals("\"FOR_SALE\""))
-                {
-                    String isbnarg = "";
-                    String titlearg = "";
-                    List<String> authorsarg = new ArrayList<>();
-                    String publisherarg = "";
-                    String publishDatearg = "";
-                    int pageCountarg = 0;
-                    //Find JsonObject o isbn
-                    for(JsonObject p:o.getJsonObject("volumeInfo").getJsonArray("industryIdentifiers").getValuesAs(JsonObject.class)){
-                        if(p.getJsonString("type").toString().equals("\"ISBN_13\""))
-                        {
-                            isbnarg = p.getJsonString("identifier").toString();
-                        }
-                    }
-
-                    //Find JsonObject o title
-                    try
-                    {
-                        titlearg = o.getJsonObject("volumeInfo").getJsonString("title").toString();
-                        //Find JsonObject o authors
-                    }
-                    catch (NullPointerException e)
-                    {
-                        titlearg = o.getJsonObject("volumeInfo").getJsonString("publisher").toString();
-                    }
-                    try
-                    {
-                        for (JsonString p : o.getJsonObject("volumeInfo").getJsonArray("authors").getValuesAs(JsonString.class))
-                        {
-                            authorsarg.add(p.toString());
-                        }
-                    }
-                    catch (NullPointerException e)
-                    {
-                        authorsarg.add("*");
-                    }
+                exchange.sendResponseHeaders(200, body.length);
+                exchange.getResponseBody().write(body);
+            }
+            exchange.close();
+        });
+        server.start();
 
-                    //Find JsonObject o publisher
-                    publisherarg = o.getJsonObject("volumeInfo").getJsonString("publisher").toString();
-                    try
-                    {
-                        //Find JsonObject o publisher date
-                        publishDatearg = o.getJsonObject("volumeInfo").getJsonString("publishedDate").toString();
-                    }
-                    catch (NullPointerException e)
-                    {
-                        publishDatearg = "10/10/1997";
-                    }
+        URI uri = URI.create("http://localhost:" + server.getAddress().getPort() + "/volumes");
+        GoogleBooks catalog = new GoogleBooks(new GoogleBooksClient(uri, Duration.ofSeconds(2)));
+        ArrayList<String> authors = new ArrayList<>();
 
-                    try
-                    {
-                        //Find JsonObject o page count
-                        pageCountarg = o.getJsonObject("volumeInfo").getJsonNumber("pageCount").intValue();
-                    }
-                    catch (NullPointerException e)
-                    {
-                        pageCountarg = 0;
-                    }
-                    Book abook = new Book(isbnarg, titlearg, authorsarg, publisherarg, publishDatearg, pageCountarg);
-                    abook.setTempID(tempId++);
-                    System.out.println(abook.toString("sSearch"));
-                    books.add(abook);
-                }
-            }
-        }
-        catch (Exception e)
+        // Test 1
+        int first = catalog.bookSearch("communist", authors, "*", "*").size();
+        int second = catalog.bookSearch("  Communist ", authors, "*", "*").size();
+        int made = 0;
+        for (AtomicInteger count : requests.values())
         {
-            System.out.println("System throws exception." + e);
+            made += count.get();
         }
-        return books;
-    }
+        if (first == 1 && second == 1 && made == 1)
+            System.out.println("PASSED Test - 1");
+        else
+            System.out.println("FAILED Test - 1: Expected two identical searches to make one request, made " + made);
 
-    /**
-     * Main method for testing
-     */
-    public static void main(String args[])
-    {
-        ArrayList<String> authors = new ArrayList<>();
-        BookCatalog thing = new GoogleBooks();
-        thing.bookSearch("communist", authors, "*", "*");
+        // Test 2
+        int failed = catalog.bookSearch("fail", authors, "*", "*").size();
+        int retried = catalog.bookSearch("fail", authors, "*", "*").size();
+        if (failed == 0 && retried == 1)
+            System.out.println("PASSED Test - 2");
+        else
+            System.out.println("FAILED Test - 2: Expected a failed search to be retried, found " + failed + " then "
+                    + retried);
+
+        // Test 3
+        long start = System.nanoTime();
+        int stalled = catalog.bookSearch("stall", authors, "*", "*").size();
+        long waited = (System.nanoTime() - start) / 1_000_000;
+        if (stalled == 0 && waited < 5_000)
+            System.out.println("PASSED Test - 3");
+        else
+            System.out.println("FAILED Test - 3: Expected a stalled search to time out after 2 s, waited " + waited
+                    + " ms");
+
+        server.stop(0);
+        handlers.shutdownNow();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,589 @@
+package BooksCatalog;
+
+import Books.Book;
+import javax.json.Json;
+import javax.json.JsonException;
+import javax.json.stream.JsonParser;
+import javax.json.stream.JsonParser.Event;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Searches the Google Books volumes service asynchronously. There is one client per service address, shared by every
+ * library client using it, so connections to the service are reused between searches.
+ *
+ * Searches are cached by their normalized query for a while, so repeating a store search does not go back to the
+ * service. A search that is still running is shared by everyone asking for the same query, and a search that fails is
+ * not cached. The least recently used searches are dropped when the cache is full.
+ *
+ * @author Tyler Reimold
+ */
+public class GoogleBooksClient
+{
+    /**
+     * The address of the Google Books volumes service.
+     */
+    public static final URI DEFAULT_URI = URI.create("https://www.googleapis.com/books/v1/volumes");
+
+    private static final String USER_AGENT = "Mozilla/5.0";
+    private static final int MAX_RESULTS = 40;
+    private static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(5);
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(10);
+    private static final int CACHE_SIZE = 256;
+    private static final long CACHE_LIFETIME_MILLIS = 10 * 60 * 1000;
+
+    /**
+     * Clients that have already been created, keyed by the address of their service.
+     */
+    private static final Map<URI, GoogleBooksClient> clients = new ConcurrentHashMap<>();
+
+    private final URI serviceUri;
+    private final Duration requestTimeout;
+    private final HttpClient http;
+    private final LinkedHashMap<String, CachedSearch> cache;
+
+    /**
+     * A search in the cache.
+     */
+    private static class CachedSearch
+    {
+        private CompletableFuture<List<Book>> books;
+        private long expires;
+    }
+
+    /**
+     * The fields of a search result's volume a book needs.
+     */
+    private static class Volume
+    {
+        private String isbn;
+        private String title;
+        private List<String> authors;
+        private String publisher;
+        private String publishDate;
+        private int pageCount;
+
+        /**
+         * Makes a book out of the volume.
+         *
+         * @return The book, or null if the volume has no identifiers or publisher.
+         */
+        private Book toBook()
+        {
+            if (this.isbn == null || this.publisher == null)
+            {
+                return null;
+            }
+
+            List<String> authors = this.authors;
+            if (authors == null)
+            {
+                authors = new ArrayList<>();
+                authors.add("*");
+            }
+            return new Book(this.isbn, this.title != null ? this.title : this.publisher, authors, this.publisher,
+                    this.publishDate != null ? this.publishDate : "10/10/1997", this.pageCount);
+        }
+    }
+
+    /**
+     * Constructor for a GoogleBooksClient.
+     *
+     * @param serviceUri - The address of the volumes service.
+     */
+    private GoogleBooksClient(URI serviceUri)
+    {
+        this(serviceUri, REQUEST_TIMEOUT);
+    }
+
+    /**
+     * Constructor for a GoogleBooksClient that is not shared, such as one for a local stub that should give up on a
+     * search sooner.
+     *
+     * @param serviceUri - The address of the volumes service.
+     * @param requestTimeout - How long a search may take before it fails.
+     */
+    GoogleBooksClient(URI serviceUri, Duration requestTimeout)
+    {
+        this.serviceUri = serviceUri;
+        this.requestTimeout = requestTimeout;
+        this.http = HttpClient.newBuilder()
+                .connectTimeout(CONNECT_TIMEOUT)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .build();
+        this.cache = new LinkedHashMap<String, CachedSearch>(16, 0.75f, true)
+        {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedSearch> eldest)
+            {
+                return this.size() > CACHE_SIZE;
+            }
+        };
+    }
+
+    /**
+     * Gets the shared client of a volumes service, creating it the first time it is requested.
+     *
+     * @param serviceUri - The address of the volumes service, such as DEFAULT_URI or a local stub.
+     * @return The shared client of the service.
+     */
+    public static GoogleBooksClient forUri(URI serviceUri)
+    {
+        return clients.computeIfAbsent(serviceUri, GoogleBooksClient::new);
+    }
+
+    /**
+     * Builds the normalized query for a set of search criteria. Searches that only differ in case, spacing or the
+     * order of their authors get the same query.
+     *
+     * @param title - The title of the desired book(s), or * for any.
+     * @param authors - The authors of the desired book(s). A * author matches any.
+     * @param isbn - The ISBN of the desired book(s), or * for any.
+     * @param publisher - The publisher of the desired book(s), or * for any.
+     * @return The query to send to the service.
+     */
+    public static String query(String title, List<String> authors, String isbn, String publisher)
+    {
+        ArrayList<String> terms = new ArrayList<>();
+        addTerm(terms, "intitle:", title);
+        addTerm(terms, "isbn:", isbn);
+        addTerm(terms, "inpublisher:", publisher);
+
+        TreeSet<String> sortedAuthors = new TreeSet<>();
+        for (String author : authors)
+        {
+            if (!author.trim().equals("*"))
+            {
+                sortedAuthors.add(normalize(author));
+            }
+        }
+        for (String author : sortedAuthors)
+        {
+            addTerm(terms, "inauthor:", author);
+        }
+
+        return String.join(" ", terms);
+    }
+
+    /**
+     * Searches the service, or the cache if the same query was searched recently.
+     *
+     * @param query - A query built by query().
+     * @return The books found, once the search completes. The list and its books are shared with other searches and
+     *          must not be changed.
+     */
+    public CompletableFuture<List<Book>> search(String query)
+    {
+        long now = System.currentTimeMillis();
+        CachedSearch search;
+        synchronized (this.cache)
+        {
+            search = this.cache.get(query);
+            if (search != null && search.expires > now)
+            {
+                return search.books;
+            }
+
+            search = new CachedSearch();
+            search.expires = now + CACHE_LIFETIME_MILLIS;
+            search.books = this.fetch(query);
+            this.cache.put(query, search);
+        }
+
+        // A failed search is dropped so the next one asks the service again
+        CachedSearch started = search;
+        started.books.whenComplete((books, error) ->
+        {
+            if (error != null)
+            {
+                synchronized (this.cache)
+                {
+                    this.cache.remove(query, started);
+                }
+            }
+        });
+        return started.books;
+    }
+
+    /**
+     * Empties the cache, so every search goes back to the service.
+     */
+    public void clearCache()
+    {
+        synchronized (this.cache)
+        {
+            this.cache.clear();
+        }
+    }
+
+    /**
+     * Sends a query to the service.
+     *
+     * @param query - The query to send.
+     * @return The books found, once the response has been read.
+     */
+    private CompletableFuture<List<Book>> fetch(String query)
+    {
+        URI uri = URI.create(this.serviceUri + "?q=" + URLEncoder.encode(query, StandardCharsets.UTF_8)
+                + "&maxResults=" + MAX_RESULTS);
+        HttpRequest request = HttpRequest.newBuilder(uri)
+                .timeout(this.requestTimeout)
+                .header("User-Agent", USER_AGENT)
+                .GET()
+                .build();
+
+        // The request timeout only covers the wait for the headers, so the whole search gets a deadline too
+        CompletableFuture<HttpResponse<InputStream>> response =
+                this.http.sendAsync(request, HttpResponse.BodyHandlers.ofInputStream());
+        CompletableFuture<List<Book>> books = response.thenApply(GoogleBooksClient::parse)
+                .orTimeout(this.requestTimeout.toMillis(), TimeUnit.MILLISECONDS);
+
+        // Closing the body of a search that timed out frees the thread still blocked reading it
+        books.whenComplete((found, error) ->
+        {
+            if (error != null)
+            {
+                response.cancel(true);
+                response.thenAccept(GoogleBooksClient::closeBody);
+            }
+        });
+        return books;
+    }
+
+    /**
+     * Closes the body of a response, ignoring any error.
+     */
+    private static void closeBody(HttpResponse<InputStream> response)
+    {
+        try
+        {
+            response.body().close();
+        }
+        catch (IOException e)
+        {
+            // Nothing more can be done with the response
+        }
+    }
+
+    /**
+     * Reads the books for sale in the US out of a volumes response. The response is parsed as it streams in, and only
+     * the fields a book needs are kept; everything else, and every volume that is not for sale, is skipped over.
+     *
+     * @param response - The service's response.
+     * @return The books in the response.
+     */
+    private static List<Book> parse(HttpResponse<InputStream> response)
+    {
+        try (InputStream body = response.body())
+        {
+            if (response.statusCode() != 200)
+            {
+                throw new CompletionException(new IOException("Google Books returned HTTP " + response.statusCode()));
+            }
+
+            try (JsonParser parser = Json.createParser(body))
+            {
+                if (parser.next() != Event.START_OBJECT)
+                {
+                    throw new JsonException("Expected a volumes object");
+                }
+
+                // A search that finds nothing has no items
+                ArrayList<Book> books = new ArrayList<>();
+                while (parser.next() == Event.KEY_NAME)
+                {
+                    String key = parser.getString();
+                    Event value = parser.next();
+                    if (key.equals("items") && value == Event.START_ARRAY)
+                    {
+                        readItems(parser, books);
+                    }
+                    else
+                    {
+                        skip(parser, value);
+                    }
+                }
+                return Collections.unmodifiableList(books);
+            }
+        }
+        catch (IOException | JsonException | NoSuchElementException e)
+        {
+            throw new CompletionException(e);
+        }
+    }
+
+    /**
+     * Reads the items array of a volumes response, up to and including its end.
+     *
+     * @param parser - A parser just past the start of the array.
+     * @param books - The books read so far.
+     */
+    private static void readItems(JsonParser parser, List<Book> books)
+    {
+        Event event;
+        while ((event = parser.next()) != Event.END_ARRAY)
+        {
+            if (event == Event.START_OBJECT)
+            {
+                Book book = readItem(parser);
+                if (book != null)
+                {
+                    books.add(book);
+                }
+            }
+            else
+            {
+                skip(parser, event);
+            }
+        }
+    }
+
+    /**
+     * Reads a single search result, up to and including its end. Once the result is known not to be for sale in the
+     * US, the rest of it is skipped.
+     *
+     * @param parser - A parser just past the start of the result.
+     * @return The book, or null if it is not for sale or is missing the fields a book needs.
+     */
+    private static Book readItem(JsonParser parser)
+    {
+        Volume volume = null;
+        boolean saleKnown = false;
+        boolean forSale = false;
+
+        while (parser.next() == Event.KEY_NAME)
+        {
+            String key = parser.getString();
+            Event value = parser.next();
+            if (key.equals("saleInfo") && value == Event.START_OBJECT)
+            {
+                forSale = readForSale(parser);
+                saleKnown = true;
+            }
+            else if (key.equals("volumeInfo") && value == Event.START_OBJECT && (forSale || !saleKnown))
+            {
+                volume = readVolume(parser);
+            }
+            else
+            {
+                skip(parser, value);
+            }
+        }
+
+        return forSale && volume != null ? volume.toBook() : null;
+    }
+
+    /**
+     * Reads the saleInfo object of a search result, up to and including its end.
+     *
+     * @param parser - A parser just past the start of the object.
+     * @return True if the book is for sale in the US.
+     */
+    private static boolean readForSale(JsonParser parser)
+    {
+        String country = null;
+        String saleability = null;
+
+        while (parser.next() == Event.KEY_NAME)
+        {
+            String key = parser.getString();
+            Event value = parser.next();
+            if (key.equals("country") && value == Event.VALUE_STRING)
+            {
+                country = parser.getString();
+            }
+            else if (key.equals("saleability") && value == Event.VALUE_STRING)
+            {
+                saleability = parser.getString();
+            }
+            else
+            {
+                skip(parser, value);
+            }
+        }
+
+        return "US".equals(country) && "FOR_SALE".equals(saleability);
+    }
+
+    /**
+     * Reads the volumeInfo object of a search result, up to and including its end.
+     *
+     * @param parser - A parser just past the start of the object.
+     * @return The fields of the volume a book needs.
+     */
+    private static Volume readVolume(JsonParser parser)
+    {
+        Volume volume = new Volume();
+
+        while (parser.next() == Event.KEY_NAME)
+        {
+            String key = parser.getString();
+            Event value = parser.next();
+            if (value == Event.VALUE_STRING && key.equals("title"))
+            {
+                volume.title = quoted(parser.getString());
+            }
+            else if (value == Event.VALUE_STRING && key.equals("publisher"))
+            {
+                volume.publisher = quoted(parser.getString());
+            }
+            else if (value == Event.VALUE_STRING && key.equals("publishedDate"))
+            {
+                volume.publishDate = quoted(parser.getString());
+            }
+            else if (value == Event.VALUE_NUMBER && key.equals("pageCount"))
+            {
+                volume.pageCount = parser.getInt();
+            }
+            else if (value == Event.START_ARRAY && key.equals("authors"))
+            {
+                volume.authors = new ArrayList<>();
+                Event event;
+                while ((event = parser.next()) != Event.END_ARRAY)
+                {
+                    if (event == Event.VALUE_STRING)
+                    {
+                        volume.authors.add(quoted(parser.getString()));
+                    }
+                    else
+                    {
+                        skip(parser, event);
+                    }
+                }
+            }
+            else if (value == Event.START_ARRAY && key.equals("industryIdentifiers"))
+            {
+                volume.isbn = "";
+                Event event;
+                while ((event = parser.next()) != Event.END_ARRAY)
+                {
+                    if (event == Event.START_OBJECT)
+                    {
+                        String isbn = readIsbn13(parser);
+                        if (isbn != null)
+                        {
+                            volume.isbn = quoted(isbn);
+                        }
+                    }
+                    else
+                    {
+                        skip(parser, event);
+                    }
+                }
+            }
+            else
+            {
+                skip(parser, value);
+            }
+        }
+
+        return volume;
+    }
+
+    /**
+     * Reads an industry identifier of a volume, up to and including its end.
+     *
+     * @param parser - A parser just past the start of the identifier.
+     * @return The identifier if it is an ISBN-13, or null otherwise.
+     */
+    private static String readIsbn13(JsonParser parser)
+    {
+        String type = null;
+        String identifier = null;
+
+        while (parser.next() == Event.KEY_NAME)
+        {
+            String key = parser.getString();
+            Event value = parser.next();
+            if (key.equals("type") && value == Event.VALUE_STRING)
+            {
+                type = parser.getString();
+            }
+            else if (key.equals("identifier") && value == Event.VALUE_STRING)
+            {
+                identifier = parser.getString();
+            }
+            else
+            {
+                skip(parser, value);
+            }
+        }
+
+        return "ISBN_13".equals(type) ? identifier : null;
+    }
+
+    /**
+     * Skips over a value. A scalar has already been read by its event; an object or array is read up to and
+     * including its end.
+     *
+     * @param parser - The parser.
+     * @param event - The event that started the value.
+     */
+    private static void skip(JsonParser parser, Event event)
+    {
+        if (event != Event.START_OBJECT && event != Event.START_ARRAY)
+        {
+            return;
+        }
+
+        int depth = 1;
+        while (depth > 0)
+        {
+            event = parser.next();
+            if (event == Event.START_OBJECT || event == Event.START_ARRAY)
+            {
+                depth++;
+            }
+            else if (event == Event.END_OBJECT || event == Event.END_ARRAY)
+            {
+                depth--;
+            }
+        }
+    }
+
+    /**
+     * Writes a string the way it appears in JSON. Book details from the service have always been kept in this form.
+     */
+    private static String quoted(String value)
+    {
+        return "\"" + value.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+
+    /**
+     * Adds a search term unless its value is *.
+     */
+    private static void addTerm(List<String> terms, String prefix, String value)
+    {
+        String normalized = normalize(value);
+        if (!normalized.isEmpty() && !normalized.equals("*"))
+        {
+            terms.add(prefix + normalized);
+        }
+    }
+
+    /**
+     * Lower cases a value and collapses its whitespace.
+     */
+    private static String normalize(String value)
+    {
+        return value.trim().replaceAll("\\s+", " ").toLowerCase();
+    }
+}
@@ -0,0 +1,86 @@
+package Library;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Running totals of library events, kept in one bucket per day. Each bucket holds a fixed number of counters, one per
+ * kind of event being counted. Events are added as they happen, so a report over the last N days only has to add up N
+ * buckets no matter how much history the library has.
+ *
+ * @author Kyler Freas
+ */
+public class DailyStatistics
+{
+    private int fields;
+    private ConcurrentSkipListMap<Long, AtomicLongArray> days;
+    private AtomicLongArray totals;
+
+    /**
+     * Creates empty statistics.
+     *
+     * @param fields - The number of counters kept for each day.
+     */
+    public DailyStatistics(int fields)
+    {
+        this.fields = fields;
+        this.days = new ConcurrentSkipListMap<>();
+        this.totals = new AtomicLongArray(fields);
+    }
+
+    /**
+     * Adds to a counter on the day of an event. A negative amount takes an event back out, as when it is undone.
+     *
+     * @param field - The counter to add to.
+     * @param date - When the event happened, in milliseconds since the epoch. Events that never happened, like the
+     *             registration of the admin account, only count toward the all time total.
+     * @param amount - The amount to add.
+     */
+    public void add(int field, long date, long amount)
+    {
+        this.totals.addAndGet(field, amount);
+        if (date != TimeClock.NEVER)
+        {
+            this.days.computeIfAbsent(TimeClock.dayOf(date), d -> new AtomicLongArray(this.fields))
+                    .addAndGet(field, amount);
+        }
+    }
+
+    /**
+     * Adds to a counter on a given day, as when loading totals that were kept per day.
+     *
+     * @param field - The counter to add to.
+     * @param day - The day, as numbered by TimeClock.dayOf().
+     * @param amount - The amount to add.
+     */
+    public void addToDay(int field, long day, long amount)
+    {
+        this.totals.addAndGet(field, amount);
+        this.days.computeIfAbsent(day, d -> new AtomicLongArray(this.fields)).addAndGet(field, amount);
+    }
+
+    /**
+     * Adds up a counter over the last number of days. The window is whole days: today and the days before it, up to
+     * the number of days asked for. Events dated after today are included.
+     *
+     * @param field - The counter to add up.
+     * @param now - The current library time, in milliseconds since the epoch. Not used when days is 0.
+     * @param days - The number of days to cover, or 0 for all time.
+     * @return The total of the counter over the window.
+     */
+    public long sum(int field, long now, int days)
+    {
+        if (days == 0)
+        {
+            return this.totals.get(field);
+        }
+
+        long total = 0;
+        for (Map.Entry<Long, AtomicLongArray> day : this.days.tailMap(TimeClock.dayOf(now) - days + 1).entrySet())
+        {
+            total += day.getValue().get(field);
+        }
+        return total;
+    }
+}
@@ -0,0 +1,675 @@
+package Library;
+
+import Books.Book;
+import Books.BookStorage;
+import Visitors.Credential;
+import Visitors.Visit;
+import Visitors.Visitor;
+import Visitors.VisitorStorage;
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An append-only journal of the library's state mutations. Every mutation is written and flushed as a single record as
+ * soon as it has been applied, so the cost of persisting it does not depend on the size of the library. After a crash
+ * the records written since the last snapshot are replayed on top of that snapshot.
+ *
+ * Each record is a length prefixed block holding its sequence number, its type and its fields. A record that was only
+ * partly written when the process died is detected by its length and cut off the end of the file when the journal is
+ * replayed, so the records written after it are not appended to a torn record.
+ *
+ * @author Kyler Freas
+ */
+public class Journal
+{
+    private static final byte REGISTER = 1;
+    private static final byte ACCOUNT = 2;
+    private static final byte BORROW = 3;
+    private static final byte RETURN = 4;
+    private static final byte PAY = 5;
+    private static final byte UNDO_PAY = 6;
+    private static final byte PURCHASE = 7;
+    private static final byte UNDO_PURCHASE = 8;
+    private static final byte ADVANCE = 9;
+    private static final byte VISIT = 10;
+
+    private File file;
+    private DataOutputStream out;
+    private ByteArrayOutputStream record;
+    private DataOutputStream recordOut;
+    private long sequence;
+    private int recordCount;
+
+    /**
+     * Opens a journal for appending. Records already in the file are kept until the journal is reset.
+     *
+     * @param file - The journal file.
+     */
+    public Journal(File file)
+    {
+        this.file = file;
+        this.record = new ByteArrayOutputStream(256);
+        this.recordOut = new DataOutputStream(this.record);
+        this.sequence = 0;
+        this.recordCount = 0;
+        this.open(true);
+    }
+
+    /**
+     * Gets the sequence number of the last record written or replayed.
+     *
+     * @return The last sequence number.
+     */
+    public synchronized long getSequence()
+    {
+        return this.sequence;
+    }
+
+    /**
+     * Gets the number of records in the journal since it was last reset.
+     *
+     * @return The number of records in the journal.
+     */
+    public synchronized int getRecordCount()
+    {
+        return this.recordCount;
+    }
+
+    /**
+     * Records the registration of a visitor.
+     *
+     * @param visitor - The newly registered visitor.
+     */
+    public synchronized void recordRegister(Visitor visitor)
+    {
+        try
+        {
+            this.begin(REGISTER);
+            this.writeRegister(visitor);
+            this.commit();
+        }
+        catch (IOException i)
+        {
+            i.printStackTrace();
+        }
+    }
+
+    /**
+     * Records the registration of a batch of visitors, as from a bulk import. Each visitor gets its own record, but the
+     * file is only flushed once for the whole batch.
+     *
+     * @param visitors - The newly registered visitors.
+     */
+    public synchronized void recordRegisters(List<Visitor> visitors)
+    {
+        try
+        {
+            for (Visitor visitor : visitors)
+            {
+                this.begin(REGISTER);
+                this.writeRegister(visitor);
+                this.append();
+            }
+            this.out.flush();
+        }
+        catch (IOException i)
+        {
+            i.printStackTrace();
+        }
+    }
+
+    /**
+     * Records the creation of an account for a visitor.
+     *
+     * @param visitorID - The visitor the account belongs to.
+     * @param username - The account's username.
+     * @param credential - The hash of the account's password.
+     * @param role - The account's role.
+     */
+    public synchronized void recordAccount(Long visitorID, String username, Credential credential, String role)
+    {
+        try
+        {
+            this.begin(ACCOUNT);
+            this.recordOut.writeLong(visitorID);
+            this.recordOut.writeUTF(username);
+            this.recordOut.writeUTF(credential.encode());
+            this.recordOut.writeUTF(role);
+            this.commit();
+        }
+        catch (IOException i)
+        {
+            i.printStackTrace();
+        }
+    }
+
+    /**
+     * Records books checked out by a visitor.
+     *
+     * @param visitorID - The visitor who checked out the books.
+     * @param books - The books that were checked out.
+     * @param date - The date of the checkout.
+     */
+    public synchronized void recordBorrow(Long visitorID, List<Book> books, long date)
+    {
+        this.recordBooks(BORROW, visitorID, books, date);
+    }
+
+    /**
+     * Records books returned by a visitor.
+     *
+     * @param visitorID - The visitor who returned the books.
+     * @param books - The books that were returned.
+     * @param date - The date of the return.
+     */
+    public synchronized void recordReturn(Long visitorID, List<Book> books, long date)
+    {
+        this.recordBooks(RETURN, visitorID, books, date);
+    }
+
+    /**
+     * Records a payment toward a visitor's fines.
+     *
+     * @param visitorID - The visitor who paid.
+     * @param amount - The amount paid.
+     * @param date - The date of the payment.
+     */
+    public synchronized void recordPayment(Long visitorID, int amount, long date)
+    {
+        this.recordAmount(PAY, visitorID, amount, date);
+    }
+
+    /**
+     * Records the undoing of a payment toward a visitor's fines.
+     *
+     * @param visitorID - The visitor whose payment was undone.
+     * @param amount - The amount of the payment.
+     * @param date - The date the payment was undone.
+     */
+    public synchronized void recordUndoPayment(Long visitorID, int amount, long date)
+    {
+        this.recordAmount(UNDO_PAY, visitorID, amount, date);
+    }
+
+    /**
+     * Records a purchase of books. The books' details are written out in full, since they may not be in the library
+     * yet when the record is replayed.
+     *
+     * @param books - The purchased books.
+     * @param quantity - The number of copies of each book purchased.
+     * @param date - The date of the purchase.
+     */
+    public synchronized void recordPurchase(List<Book> books, int quantity, long date)
+    {
+        try
+        {
+            this.begin(PURCHASE);
+            this.recordOut.writeInt(quantity);
+            this.recordOut.writeLong(date);
+            this.recordOut.writeInt(books.size());
+            for (Book b : books)
+            {
+                this.recordOut.writeUTF(b.getIsbn());
+                this.recordOut.writeUTF(b.getTitle());
+                this.recordOut.writeInt(b.getAuthor().size());
+                for (String author : b.getAuthor())
+                {
+                    this.recordOut.writeUTF(author);
+                }
+                this.recordOut.writeUTF(b.getPublisher());
+                this.recordOut.writeUTF(b.getPublishDate());
+                this.recordOut.writeInt(b.getPageCount());
+            }
+            this.commit();
+        }
+        catch (IOException i)
+        {
+            i.printStackTrace();
+        }
+    }
+
+    /**
+     * Records the undoing of a purchase of books.
+     *
+     * @param books - The books of the purchase.
+     * @param quantity - The number of copies of each book that were purchased.
+     */
+    public synchronized void recordUndoPurchase(List<Book> books, int quantity)
+    {
+        try
+        {
+            this.begin(UNDO_PURCHASE);
+            this.recordOut.writeInt(quantity);
+            this.writeIsbns(books);
+            this.commit();
+        }
+        catch (IOException i)
+        {
+            i.printStackTrace();
+        }
+    }
+
+    /**
+     * Records an advance of the library's clock.
+     *
+     * @param days - The number of days advanced.
+     * @param hours - The number of hours advanced.
+     */
+    public synchronized void recordAdvance(int days, int hours)
+    {
+        try
+        {
+            this.begin(ADVANCE);
+            this.recordOut.writeInt(days);
+            this.recordOut.writeInt(hours);
+            this.commit();
+        }
+        catch (IOException i)
+        {
+            i.printStackTrace();
+        }
+    }
+
+    /**
+     * Records a finished visit.
+     *
+     * @param visit - The visit, once it has ended.
+     */
+    public synchronized void recordVisit(Visit visit)
+    {
+        try
+        {
+            this.begin(VISIT);
+            this.recordOut.writeLong(visit.getVisitorID());
+            this.recordOut.writeLong(visit.getStartDateTime());
+            this.recordOut.writeLong(visit.getEndDateTime());
+            this.commit();
+        }
+        catch (IOException i)
+        {
+            i.printStackTrace();
+        }
+    }
+
+    /**
+     * Replays every record written after a snapshot onto the state loaded from that snapshot. Records at or before the
+     * snapshot's sequence number are already part of the snapshot and are skipped. Anything after the last complete
+     * record was left by a crash, and is truncated away.
+     *
+     * @param snapshotSequence - The sequence number the snapshot was taken at.
+     * @param visitorStorage - The visitor storage loaded from the snapshot.
+     * @param bookStorage - The book storage loaded from the snapshot.
+     * @param timeClock - The time clock loaded from the snapshot.
+     * @return The number of records replayed.
+     */
+    public synchronized int replay(long snapshotSequence, VisitorStorage visitorStorage, BookStorage bookStorage, TimeClock timeClock)
+    {
+        this.sequence = snapshotSequence;
+        this.recordCount = 0;
+        int replayed = 0;
+        long fileLength = this.file.length();
+        // Offset just past the last complete record
+        long end = 0;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(this.file))))
+        {
+            while (true)
+            {
+                int length;
+                byte[] data;
+                try
+                {
+                    length = in.readInt();
+                    // A length that cannot hold a record header, or runs past the end of the file, was torn
+                    if (length < 9 || length > fileLength - end - 4)
+                    {
+                        break;
+                    }
+                    data = new byte[length];
+                    in.readFully(data);
+                }
+                catch (EOFException eof)
+                {
+                    // End of the journal, or a record that was cut short by a crash
+                    break;
+                }
+                end += 4 + length;
+
+                DataInputStream recordIn = new DataInputStream(new ByteArrayInputStream(data));
+                long recordSequence = recordIn.readLong();
+                byte type = recordIn.readByte();
+                this.recordCount++;
+
+                if (recordSequence <= snapshotSequence)
+                {
+                    continue;
+                }
+
+                this.apply(type, recordIn, visitorStorage, bookStorage, timeClock);
+                this.sequence = recordSequence;
+                replayed++;
+            }
+        }
+        catch (FileNotFoundException f)
+        {
+            // No journal yet, nothing to replay
+        }
+        catch (IOException i)
+        {
+            i.printStackTrace();
+        }
+
+        if (end < this.file.length())
+        {
+            this.truncate(end);
+        }
+        return replayed;
+    }
+
+    /**
+     * Helper method for replay(). Cuts a torn record off the end of the journal and reopens it for appending.
+     *
+     * @param end - The offset just past the last complete record.
+     */
+    private void truncate(long end)
+    {
+        try
+        {
+            this.out.close();
+            try (FileChannel channel = FileChannel.open(this.file.toPath(), StandardOpenOption.WRITE))
+            {
+                channel.truncate(end);
+                channel.force(true);
+            }
+        }
+        catch (IOException i)
+        {
+            i.printStackTrace();
+        }
+        this.open(true);
+    }
+
+    /**
+     * Empties the journal. Called once a snapshot holding every record so far has been safely written.
+     */
+    public synchronized void reset()
+    {
+        try
+        {
+            this.out.close();
+        }
+        catch (IOException i)
+        {
+            i.printStackTrace();
+        }
+        this.open(false);
+        this.recordCount = 0;
+    }
+
+    /**
+     * Closes the journal file.
+     */
+    public synchronized void close()
+    {
+        try
+        {
+            this.out.close();
+        }
+        catch (IOException i)
+        {
+            i.printStackTrace();
+        }
+    }
+
+    /**
+     * Helper method for replay(). Applies a single record to the library's state.
+     */
+    private void apply(byte type, DataInputStream in, VisitorStorage visitorStorage, BookStorage bookStorage, TimeClock timeClock) throws IOException
+    {
+        Visitor visitor;
+
+        switch (type)
+        {
+            case REGISTER:
+                Long id = in.readLong();
+                String firstName = in.readUTF();
+                String lastName = in.readUTF();
+                String address = in.readUTF();
+                String phoneNumber = in.readUTF();
+                visitorStorage.registerVisitor(id, firstName, lastName, address, phoneNumber, readDate(in));
+                break;
+
+            case ACCOUNT:
+                Long visitorID = in.readLong();
+                String username = in.readUTF();
+                // Journals written before passwords were hashed hold them in plain text
+                Credential credential = Credential.fromStored(in.readUTF());
+                String role = in.readUTF();
+                visitor = visitorStorage.getVisitor(visitorID);
+                // Records for a visitor whose registration never made it into the journal are skipped, rather than
+                // stopping the library from starting. Payments already skip an unknown visitor.
+                if (visitor == null)
+                {
+                    break;
+                }
+                visitor.createAccount(username, credential, role);
+                visitorStorage.addTakenUsername(username, visitorID);
+                break;
+
+            case BORROW:
+                visitor = visitorStorage.getVisitor(in.readLong());
+                ArrayList<Book> borrowed = readBooks(in, bookStorage);
+                if (visitor == null)
+                {
+                    break;
+                }
+                visitor.checkOutBooks(borrowed, readDate(in));
+                break;
+
+            case RETURN:
+                Long returnerID = in.readLong();
+                ArrayList<Book> returned = readBooks(in, bookStorage);
+                if (visitorStorage.getVisitor(returnerID) == null)
+                {
+                    break;
+                }
+                visitorStorage.returnBooks(returnerID, returned, readDate(in));
+                break;
+
+            case PAY:
+                Long payerID = in.readLong();
+                int paid = in.readInt();
+                visitorStorage.payFine(payerID, paid, readDate(in));
+                break;
+
+            case UNDO_PAY:
+                Long unpayerID = in.readLong();
+                int unpaid = in.readInt();
+                visitorStorage.undoPayFine(unpayerID, unpaid, readDate(in));
+                break;
+
+            case PURCHASE:
+                int quantity = in.readInt();
+                long date = readDate(in);
+                int count = in.readInt();
+                ArrayList<Book> purchased = new ArrayList<>(count);
+                for (int i = 0; i < count; i++)
+                {
+                    String isbn = in.readUTF();
+                    String title = in.readUTF();
+                    int authorCount = in.readInt();
+                    ArrayList<String> authors = new ArrayList<>(authorCount);
+                    for (int a = 0; a < authorCount; a++)
+                    {
+                        authors.add(in.readUTF());
+                    }
+                    String publisher = in.readUTF();
+                    String publishDate = in.readUTF();
+                    int pageCount = in.readInt();
+                    purchased.add(new Book(isbn, title, authors, publisher, publishDate, pageCount));
+                }
+                bookStorage.addBooks(purchased, quantity, date);
+                break;
+
+            case UNDO_PURCHASE:
+                int removed = in.readInt();
+                bookStorage.removeBooks(readBooks(in, bookStorage), removed);
+                break;
+
+            case VISIT:
+                Long visitID = in.readLong();
+                long start = in.readLong();
+                visitorStorage.restoreVisit(start, in.readLong(), visitID);
+                break;
+
+            case ADVANCE:
+                int days = in.readInt();
+                int hours = in.readInt();
+                timeClock.advanceTime(days, hours);
+                break;
+
+            default:
+                System.out.println("Unknown journal record type " + type);
+                break;
+        }
+    }
+
+    /**
+     * Helper method for recording. Writes a record of a visitor and a list of books.
+     */
+    private void recordBooks(byte type, Long visitorID, List<Book> books, long date)
+    {
+        try
+        {
+            this.begin(type);
+            this.recordOut.writeLong(visitorID);
+            this.writeIsbns(books);
+            this.recordOut.writeLong(date);
+            this.commit();
+        }
+        catch (IOException i)
+        {
+            i.printStackTrace();
+        }
+    }
+
+    /**
+     * Helper method for recording. Writes a record of a visitor and an amount of money.
+     */
+    private void recordAmount(byte type, Long visitorID, int amount, long date)
+    {
+        try
+        {
+            this.begin(type);
+            this.recordOut.writeLong(visitorID);
+            this.recordOut.writeInt(amount);
+            this.recordOut.writeLong(date);
+            this.commit();
+        }
+        catch (IOException i)
+        {
+            i.printStackTrace();
+        }
+    }
+
+    /**
+     * Helper method for recording. Writes the ISBNs of a list of books.
+     */
+    private void writeIsbns(List<Book> books) throws IOException
+    {
+        this.recordOut.writeInt(books.size());
+        for (Book b : books)
+        {
+            this.recordOut.writeUTF(b.getIsbn());
+        }
+    }
+
+    /**
+     * Helper method for replay. Reads the ISBNs of a list of books and looks the books up in the book storage.
+     */
+    private static ArrayList<Book> readBooks(DataInputStream in, BookStorage bookStorage) throws IOException
+    {
+        int count = in.readInt();
+        ArrayList<Book> books = new ArrayList<>(count);
+        for (int i = 0; i < count; i++)
+        {
+            Book book = bookStorage.getBooks().get(in.readUTF());
+            if (book != null)
+            {
+                books.add(book);
+            }
+        }
+        return books;
+    }
+
+    /**
+     * Helper method for replay. Reads a date written as milliseconds since the epoch.
+     */
+    private static long readDate(DataInputStream in) throws IOException
+    {
+        return in.readLong();
+    }
+
+    /**
+     * Starts a new record with the next sequence number.
+     */
+    private void begin(byte type) throws IOException
+    {
+        this.record.reset();
+        this.recordOut.writeLong(this.sequence + 1);
+        this.recordOut.writeByte(type);
+    }
+
+    /**
+     * Writes the fields of a registration record.
+     */
+    private void writeRegister(Visitor visitor) throws IOException
+    {
+        this.recordOut.writeLong(visitor.getID());
+        this.recordOut.writeUTF(visitor.getFirstName());
+        this.recordOut.writeUTF(visitor.getLastName());
+        this.recordOut.writeUTF(visitor.getAddress());
+        this.recordOut.writeUTF(visitor.getPhoneNumber());
+        this.recordOut.writeLong(visitor.getRegisteredDate());
+    }
+
+    /**
+     * Writes the current record to the journal in a single block and flushes it to the file.
+     */
+    private void commit() throws IOException
+    {
+        this.append();
+        this.out.flush();
+    }
+
+    /**
+     * Writes the current record to the journal in a single block without flushing it.
+     */
+    private void append() throws IOException
+    {
+        this.out.writeInt(this.record.size());
+        this.record.writeTo(this.out);
+        this.sequence++;
+        this.recordCount++;
+    }
+
+    /**
+     * Opens the journal file for writing.
+     *
+     * @param append - Whether to keep the records already in the file.
+     */
+    private void open(boolean append)
+    {
+        try
+        {
+            this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(this.file, append)));
+        }
+        catch (FileNotFoundException f)
+        {
+            f.printStackTrace();
+        }
+    }
+}
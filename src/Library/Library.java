@@ -4,13 +4,23 @@ import Books.*;
 import Client.Client;
 import Sort.*;
 import Visitors.CheckOut;
+import Visitors.Credential;
 import Visitors.Visit;
+import Visitors.VisitorImporter;
 import Visitors.VisitorStorage;
 import Visitors.Visitor;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
 import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import LibraryProtectionProxy.LibrarySubject;
 
 /**
@@ -23,28 +33,70 @@ import LibraryProtectionProxy.LibrarySubject;
  * @author Tyler Reimold
  * @author Kyle Kaniecki
  */
-public class Library extends Observable implements LibrarySubject
+public class Library implements LibrarySubject
 {
     private final int OPEN = 0;
     private final int CLOSED = 1;
     private final File FLATFILE = new File("files/books.txt");
+    private final File SNAPSHOT = new File("files/LBMS.snapshot");
+    private final File JOURNAL = new File("files/LBMS.journal");
+
+    /**
+     * Number of journal records after which a new snapshot is taken and the journal is emptied.
+     */
+    private final int SNAPSHOT_INTERVAL = 1000;
+
+    /**
+     * Milliseconds between ticks of the time clock. Responses only show whole seconds, so there is no need to tick
+     * faster.
+     */
+    private final long CLOCK_RESOLUTION = 1000;
+
+    /**
+     * Number of visitors registered and journaled together by a bulk import.
+     */
+    private final int IMPORT_CHUNK_SIZE = 1000;
+
+    /**
+     * The hours of the day the library opens and closes at.
+     */
+    private final int OPENING_HOUR = 8;
+    private final int CLOSING_HOUR = 19;
 
     private VisitorStorage visitorStorage;
     private BookStorage bookStorage;
     private String status;
     private TimeClock timeClock;
-    private CheckTimeTask checkTimeTask;
-    private Timer timer;
-    private LibraryState currentState;
+    private Journal journal;
+    private ScheduledExecutorService hoursScheduler;
+    private ScheduledFuture<?> nextTransition;
+    private volatile LibraryState currentState;
     private ArrayList<LibraryState> stateList;
 
+    /**
+     * Held shared by every change to persistent state and exclusively by checkpoint(), so a snapshot never catches a
+     * change that has been applied but not yet journaled.
+     */
+    private final ReentrantReadWriteLock stateLock = new ReentrantReadWriteLock();
+
     /**
      * Map of all current client connections. Can only be added to, no getter method.
      */
-    private HashMap<Long, Client> clientList;
+    private ConcurrentHashMap<Long, Client> clientList;
 
     /**
-     * Initializes all required persistent state from existing files.
+     * Listeners waiting for responses, keyed by the client ID they listen to.
+     */
+    private ConcurrentHashMap<Long, ResponseListener> responseListeners;
+
+    /**
+     * Responses collected for clients that are running a batch of commands, keyed by client ID.
+     */
+    private ConcurrentHashMap<Long, StringBuilder> batches;
+
+    /**
+     * Initializes all required persistent state from existing files. The latest snapshot is loaded, falling back to the
+     * individually serialized storages if there is none, and the journal is replayed on top of it.
      */
     public Library()
     {
@@ -55,18 +107,41 @@ public class Library extends Observable implements LibrarySubject
         this.currentState = this.stateList.get(0);
 
         // Initialize client map
-        this.clientList = new HashMap<Long, Client>();
+        this.clientList = new ConcurrentHashMap<Long, Client>();
+        this.responseListeners = new ConcurrentHashMap<Long, ResponseListener>();
+        this.batches = new ConcurrentHashMap<Long, StringBuilder>();
 
         this.status = "";
-        // Initialized with reference to self to give access to TimeClock
-        this.visitorStorage = VisitorStorage.deserialize(this);
-        this.bookStorage = BookStorage.deserialize(this);
-        this.timeClock = TimeClock.deserialize();
+        long snapshotSequence = 0;
+        Snapshot snapshot = Snapshot.read(SNAPSHOT, this);
+        if (snapshot != null)
+        {
+            snapshotSequence = snapshot.getSequence();
+            this.visitorStorage = snapshot.getVisitorStorage();
+            this.bookStorage = snapshot.getBookStorage();
+            this.timeClock = snapshot.getTimeClock();
+        }
+        else
+        {
+            // Initialized with reference to self to give access to TimeClock
+            this.visitorStorage = VisitorStorage.deserialize(this);
+            this.bookStorage = BookStorage.deserialize(this);
+            this.timeClock = TimeClock.deserialize();
+        }
 
-        // Have to cancel task and Timer when shutting down
-        this.timer = new Timer("Task Timer");
-        this.checkTimeTask = new CheckTimeTask(this);
-        timer.schedule(checkTimeTask, 0, 15000);
+        // Recover everything that happened since the snapshot
+        this.journal = new Journal(JOURNAL);
+        this.journal.replay(snapshotSequence, this.visitorStorage, this.bookStorage, this.timeClock);
+        this.timeClock.start(CLOCK_RESOLUTION);
+
+        // Have to shut the scheduler down when shutting down
+        this.hoursScheduler = Executors.newSingleThreadScheduledExecutor(runnable ->
+        {
+            Thread thread = new Thread(runnable, "Library Hours");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.scheduleNextTransition();
     }
 
     /**
@@ -141,7 +216,26 @@ public class Library extends Observable implements LibrarySubject
      */
     public void borrowBook(Long clientID, ArrayList<String> bkID,Long vID)
     {
-        String str = clientID + "," + this.currentState.stateCheckOutBook(bkID, vID, this.visitorStorage, this.timeClock, this.bookStorage);
+        String str;
+        ReentrantLock visitorLock = this.visitorStorage.getVisitorLock(vID);
+        this.stateLock.readLock().lock();
+        visitorLock.lock();
+        try
+        {
+            // Copy counts are shared between visitors, so the checkout is applied and recorded in one step to keep
+            // the journal in the order the copies were actually taken
+            synchronized (this.journal)
+            {
+                str = clientID + "," + this.currentState.stateCheckOutBook(bkID, vID, this.visitorStorage,
+                        this.timeClock, this.bookStorage, this.journal);
+            }
+        }
+        finally
+        {
+            visitorLock.unlock();
+            this.stateLock.readLock().unlock();
+        }
+        this.checkpointIfDue();
         updateClientStatus(clientID, str);
     }
 
@@ -175,7 +269,21 @@ public class Library extends Observable implements LibrarySubject
                 purchasedBooks.add(book);
             }
         }
-        bookStorage.addBooks(purchasedBooks, quantity, this.getTime());
+        long purchaseDate = this.getTime();
+        this.stateLock.readLock().lock();
+        try
+        {
+            synchronized (this.journal)
+            {
+                bookStorage.addBooks(purchasedBooks, quantity, purchaseDate);
+                this.journal.recordPurchase(purchasedBooks, quantity, purchaseDate);
+            }
+        }
+        finally
+        {
+            this.stateLock.readLock().unlock();
+        }
+        this.checkpointIfDue();
 
         String response = clientID + ",buy,success\n";
 
@@ -204,7 +312,20 @@ public class Library extends Observable implements LibrarySubject
                 removeBooks.add(book);
             }
         }
-        this.bookStorage.removeBooks(removeBooks,quantity);
+        this.stateLock.readLock().lock();
+        try
+        {
+            synchronized (this.journal)
+            {
+                this.bookStorage.removeBooks(removeBooks,quantity);
+                this.journal.recordUndoPurchase(removeBooks, quantity);
+            }
+        }
+        finally
+        {
+            this.stateLock.readLock().unlock();
+        }
+        this.checkpointIfDue();
     }
 
     /**
@@ -218,11 +339,27 @@ public class Library extends Observable implements LibrarySubject
      */
     public void registerVisitor(Long clientID, String firstName, String lastName, String address, String phoneNumber)
     {
-        Visitor newVis = visitorStorage.registerVisitor(firstName, lastName, address, phoneNumber);
+        Visitor newVis;
+        this.stateLock.readLock().lock();
+        try
+        {
+            // Journaled before it is published, so nothing can be journaled for the visitor ahead of its registration
+            newVis = visitorStorage.prepareVisitor(firstName, lastName, address, phoneNumber);
+            if (newVis != null)
+            {
+                this.journal.recordRegister(newVis);
+                this.visitorStorage.publishVisitor(newVis);
+            }
+        }
+        finally
+        {
+            this.stateLock.readLock().unlock();
+        }
         String response = clientID + ",register,";
 
         if (newVis != null)
         {
+            this.checkpointIfDue();
             response += newVis.getID() + "," + this.timeClock.getFormattedDate() + ";";
         }
         else
@@ -233,6 +370,39 @@ public class Library extends Observable implements LibrarySubject
         updateClientStatus(clientID, response);
     }
 
+    /**
+     * Registers every visitor in a CSV file of first name, last name, address and phone number, with a header line.
+     * Visitors are registered in parallel and journaled a chunk at a time, and a snapshot is taken once the import is
+     * done rather than every time the journal fills up along the way.
+     *
+     * @param file - The CSV file of visitors.
+     * @return The number of visitors imported and rejected, and how long it took.
+     */
+    public VisitorImporter.Report importVisitors(File file) throws IOException
+    {
+        VisitorImporter importer = new VisitorImporter(this.visitorStorage, IMPORT_CHUNK_SIZE,
+                Runtime.getRuntime().availableProcessors());
+
+        // Each chunk is journaled before it is published, and both under the state lock, so a snapshot holds either
+        // all of a chunk or none of it
+        VisitorImporter.Report report = importer.importFile(file.toPath(), true, this.getTime(), visitors ->
+        {
+            this.stateLock.readLock().lock();
+            try
+            {
+                this.journal.recordRegisters(visitors);
+                this.visitorStorage.publishVisitors(visitors);
+            }
+            finally
+            {
+                this.stateLock.readLock().unlock();
+            }
+        });
+
+        this.checkpoint();
+        return report;
+    }
+
     /**
      * Begins a visit in the library for a registered visitor.
      *
@@ -240,7 +410,16 @@ public class Library extends Observable implements LibrarySubject
      */
     public void beginVisit(Long clientID, Long visitorID)
     {
-        String response = clientID + "," + currentState.stateBeginVisit(visitorID, this.visitorStorage);
+        String response;
+        this.stateLock.readLock().lock();
+        try
+        {
+            response = clientID + "," + currentState.stateBeginVisit(visitorID, this.visitorStorage);
+        }
+        finally
+        {
+            this.stateLock.readLock().unlock();
+        }
         updateClientStatus(clientID, response);
     }
 
@@ -251,7 +430,20 @@ public class Library extends Observable implements LibrarySubject
      */
     public void endVisit(Long clientID, Long visitorID)
     {
-        Visit visit = this.visitorStorage.endVisit(visitorID);
+        Visit visit;
+        this.stateLock.readLock().lock();
+        try
+        {
+            visit = this.visitorStorage.endVisit(visitorID);
+            if (visit != null)
+            {
+                this.journal.recordVisit(visit);
+            }
+        }
+        finally
+        {
+            this.stateLock.readLock().unlock();
+        }
         String response = clientID + ",depart,";
 
         if(visitorStorage.getVisitor(visitorID) == null)
@@ -262,8 +454,8 @@ public class Library extends Observable implements LibrarySubject
         }
         else if (visit != null)
         {
-            int duration = visit.getEndDateTime().get(Calendar.HOUR_OF_DAY) - visit.getStartDateTime().get(Calendar.HOUR_OF_DAY);
-            response += visitorID + "," + duration + "," + visit.getFormattedTime(visit.getEndDateTime()) + ";";
+            int duration = TimeClock.hourOf(visit.getEndDateTime()) - TimeClock.hourOf(visit.getStartDateTime());
+            response += visitorID + "," + duration + "," + TimeClock.formatTime(visit.getEndDateTime()) + ";";
         }
         else
         {
@@ -286,13 +478,21 @@ public class Library extends Observable implements LibrarySubject
 
         if (visitor != null)
         {
-            ArrayList<CheckOut> checkouts = visitor.getCheckOut();
-            response += checkouts.size() + "\n";
-            for (CheckOut c : checkouts)
+            ReentrantLock visitorLock = this.visitorStorage.getVisitorLock(visitorID);
+            visitorLock.lock();
+            try
             {
-                Calendar borrowDate = c.getBorrowDate();
-                String date =  borrowDate.get(Calendar.YEAR) + "/" + borrowDate.get(Calendar.MONTH) + "/" + borrowDate.get(Calendar.DAY_OF_MONTH);
-                response += c.getBook().toString("fBorrow") + date + "\n";
+                ArrayList<CheckOut> checkouts = visitor.getCheckOut();
+                response += checkouts.size() + "\n";
+                for (CheckOut c : checkouts)
+                {
+                    String date = TimeClock.formatDate(c.getBorrowDate());
+                    response += c.getBook().toString("fBorrow") + date + "\n";
+                }
+            }
+            finally
+            {
+                visitorLock.unlock();
             }
         }
         else
@@ -311,7 +511,23 @@ public class Library extends Observable implements LibrarySubject
      */
     public void payFine(Long clientID, Long visitorID, int amount)
     {
-        this.visitorStorage.payFine(visitorID, amount);
+        long datePaid = this.getTime();
+        ReentrantLock visitorLock = this.visitorStorage.getVisitorLock(visitorID);
+        this.stateLock.readLock().lock();
+        visitorLock.lock();
+        try
+        {
+            if (this.visitorStorage.payFine(visitorID, amount, datePaid))
+            {
+                this.journal.recordPayment(visitorID, amount, datePaid);
+            }
+        }
+        finally
+        {
+            visitorLock.unlock();
+            this.stateLock.readLock().unlock();
+        }
+        this.checkpointIfDue();
 
         String response = clientID + ",success" + "," + amount + ";";
         updateClientStatus(clientID, response);
@@ -326,7 +542,23 @@ public class Library extends Observable implements LibrarySubject
      */
     public void undoPayFine(Long clientID, Long visitorID, int amount)
     {
-        this.visitorStorage.undoPayFine(visitorID, amount);
+        long date = this.getTime();
+        ReentrantLock visitorLock = this.visitorStorage.getVisitorLock(visitorID);
+        this.stateLock.readLock().lock();
+        visitorLock.lock();
+        try
+        {
+            if (this.visitorStorage.undoPayFine(visitorID, amount, date))
+            {
+                this.journal.recordUndoPayment(visitorID, amount, date);
+            }
+        }
+        finally
+        {
+            visitorLock.unlock();
+            this.stateLock.readLock().unlock();
+        }
+        this.checkpointIfDue();
     }
 
     /**
@@ -347,16 +579,46 @@ public class Library extends Observable implements LibrarySubject
     /**
      * Checks the time of the Time Clock. Changes the state of the library depending on the time.
      */
-    public void checkTime()
+    public synchronized void checkTime()
     {
-        int hour = timeClock.getCalendarDate().get(Calendar.HOUR_OF_DAY);
+        int hour = TimeClock.hourOf(timeClock.now());
 
-        if((hour < 8 || hour >= 19) && (this.currentState == stateList.get(OPEN)))
-            close();
-        else if ((hour >= 8 && hour < 19) && (this.currentState == stateList.get(CLOSED)))
-            open();
-        else
-           ; // Do nothing
+        this.stateLock.readLock().lock();
+        try
+        {
+            if((hour < OPENING_HOUR || hour >= CLOSING_HOUR) && (this.currentState == stateList.get(OPEN)))
+                close();
+            else if ((hour >= OPENING_HOUR && hour < CLOSING_HOUR) && (this.currentState == stateList.get(CLOSED)))
+                open();
+            else
+               ; // Do nothing
+        }
+        finally
+        {
+            this.stateLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Brings the state of the library up to date with the Time Clock and schedules a check for the next time the
+     * library opens or closes. Any check already scheduled is replaced, so this is called again whenever time is
+     * advanced.
+     */
+    private synchronized void scheduleNextTransition()
+    {
+        if (this.nextTransition != null)
+        {
+            this.nextTransition.cancel(false);
+        }
+
+        this.checkTime();
+
+        long now = timeClock.now();
+        long next = Math.min(TimeClock.nextHourOf(now, OPENING_HOUR), TimeClock.nextHourOf(now, CLOSING_HOUR));
+
+        // Offsets only change by advancing, so library time and real time move at the same rate until then
+        this.nextTransition = this.hoursScheduler.schedule(this::scheduleNextTransition, next - now,
+                TimeUnit.MILLISECONDS);
     }
 
     /**
@@ -364,10 +626,21 @@ public class Library extends Observable implements LibrarySubject
      */
     private void close()
     {
-        this.visitorStorage.endAllVisits();
+        this.endAllVisits();
         this.currentState = stateList.get(CLOSED);
     }
 
+    /**
+     * Ends every active visit and journals the visits ended.
+     */
+    private void endAllVisits()
+    {
+        for (Visit visit : this.visitorStorage.endAllVisits())
+        {
+            this.journal.recordVisit(visit);
+        }
+    }
+
     /**
      * Changes the current state of the library from closed to open.
      */
@@ -385,13 +658,13 @@ public class Library extends Observable implements LibrarySubject
     }
 
     /**
-     * Gets the time of the system in a Date object.
+     * Gets the time of the system.
      *
-     * @return The Time Clock's current time.
+     * @return The Time Clock's current time, in milliseconds since the epoch.
      */
-    public Calendar getTime()
+    public long getTime()
     {
-        return timeClock.getCalendarDate();
+        return timeClock.now();
     }
 
     /**
@@ -404,8 +677,22 @@ public class Library extends Observable implements LibrarySubject
     {
         if ((days >= 0 && days <= 7) && (hours >= 0 && hours <= 23))
         {
-            timeClock.advanceTime(days, hours);
-            visitorStorage.endAllVisits();
+            this.stateLock.readLock().lock();
+            try
+            {
+                synchronized (this.journal)
+                {
+                    timeClock.advanceTime(days, hours);
+                    this.journal.recordAdvance(days, hours);
+                }
+                this.endAllVisits();
+            }
+            finally
+            {
+                this.stateLock.readLock().unlock();
+            }
+            this.scheduleNextTransition();
+            this.checkpointIfDue();
             //generateReport();
             updateClientStatus(clientID, clientID + ",advance,success;");
         }
@@ -427,16 +714,27 @@ public class Library extends Observable implements LibrarySubject
      */
     public void returnBooks(Long clientID, Long visitorID, ArrayList<String> isbns)
     {
-        ArrayList<Book> books = new ArrayList<>();
-        for (Book book: this.bookStorage.getBooks().values())
+        ArrayList<Book> books = this.bookStorage.resolveBooks(isbns);
+
+        long dateReturned = this.getTime();
+        double fines;
+        ReentrantLock visitorLock = this.visitorStorage.getVisitorLock(visitorID);
+        this.stateLock.readLock().lock();
+        visitorLock.lock();
+        try
         {
-            if (isbns.contains(book.getIsbn()))
+            synchronized (this.journal)
             {
-                books.add(book);
+                fines = this.visitorStorage.returnBooks(visitorID, books, dateReturned);
+                this.journal.recordReturn(visitorID, books, dateReturned);
             }
         }
-
-        double fines = this.visitorStorage.returnBooks(visitorID, books);
+        finally
+        {
+            visitorLock.unlock();
+            this.stateLock.readLock().unlock();
+        }
+        this.checkpointIfDue();
 
         if (fines > 0)
         {
@@ -477,12 +775,56 @@ public class Library extends Observable implements LibrarySubject
      */
     public void shutdown(Long clientID)
     {
-        this.timeClock.serialize();
-        this.visitorStorage.serialize();
-        this.bookStorage.serialize();
+        this.hoursScheduler.shutdownNow();
+        this.timeClock.stop();
+        this.endAllVisits();
+        this.checkpoint();
+        this.journal.close();
         System.exit(0);
     }
 
+    /**
+     * Writes a snapshot of all persistent state and empties the journal, since every record in it is now part of the
+     * snapshot. If the process dies before the journal is emptied, the records are skipped on replay by their sequence
+     * numbers.
+     */
+    public void checkpoint()
+    {
+        this.stateLock.writeLock().lock();
+        try
+        {
+            Snapshot snapshot = new Snapshot(this.journal.getSequence(), this.timeClock, this.visitorStorage, this.bookStorage);
+            snapshot.write(SNAPSHOT);
+            this.journal.reset();
+        }
+        catch (IOException i)
+        {
+            i.printStackTrace();
+        }
+        finally
+        {
+            this.stateLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Takes a snapshot once enough records have built up in the journal, keeping recovery time bounded.
+     */
+    private void checkpointIfDue()
+    {
+        if (this.journal.getRecordCount() >= SNAPSHOT_INTERVAL)
+        {
+            synchronized (this.stateLock)
+            {
+                // Another client may have taken the snapshot while this one waited
+                if (this.journal.getRecordCount() >= SNAPSHOT_INTERVAL)
+                {
+                    this.checkpoint();
+                }
+            }
+        }
+    }
+
     /**
      * Creates new client connection with library.
      */
@@ -499,6 +841,7 @@ public class Library extends Observable implements LibrarySubject
     public void clientDisconnect(Long clientID)
     {
         this.clientList.remove(clientID);
+        this.visitorStorage.forgetLogins(clientID);
     }
 
     /**
@@ -530,22 +873,41 @@ public class Library extends Observable implements LibrarySubject
         }
         else
         {
-            String result = visitorStorage.createAccountCheck(username, visitorID);
-
-            if (result.equals("duplicate username"))
+            // Hashing is slow on purpose, so it is done before any lock is taken
+            Credential credential = Credential.create(password);
+            ReentrantLock visitorLock = this.visitorStorage.getVisitorLock(visitorID);
+            this.stateLock.readLock().lock();
+            visitorLock.lock();
+            try
             {
-                response = clientID + ",create,duplicate-username;";
+                String result = visitorStorage.createAccountCheck(username, visitorID);
+
+                if (result.equals("duplicate username"))
+                {
+                    response = clientID + ",create,duplicate-username;";
+                }
+                else if (result.equals("duplicate visitor"))
+                {
+                    response = clientID + ",create,duplicate-visitor;";
+                }
+                else if (!visitorStorage.addTakenUsername(username, visitorID))
+                {
+                    // Another visitor claimed the username since the check
+                    response = clientID + ",create,duplicate-username;";
+                }
+                else
+                {
+                    visitorStorage.getVisitor(visitorID).createAccount(username, credential, role);
+                    this.journal.recordAccount(visitorID, username, credential, role);
+                    response = clientID + ",create,success;";
+                }
             }
-            else if (result.equals("duplicate visitor"))
+            finally
             {
-                response = clientID + ",create,duplicate-visitor;";
-            }
-            else
-            {
-                visitorStorage.getVisitor(visitorID).createAccount(username, password, role);
-                visitorStorage.addTakenUsername(username, visitorID);
-                response = clientID + ",create,success;";
+                visitorLock.unlock();
+                this.stateLock.readLock().unlock();
             }
+            this.checkpointIfDue();
             updateClientStatus(clientID, response);
         }
     }
@@ -559,7 +921,7 @@ public class Library extends Observable implements LibrarySubject
      */
     public void login(Long clientID, String username, String password)
     {
-        boolean login = visitorStorage.login(username, password);
+        boolean login = visitorStorage.login(clientID, username, password);
         String response;
 
         if (login)
@@ -619,19 +981,98 @@ public class Library extends Observable implements LibrarySubject
     ///////////////////////// Helper Methods for Updating Status ////////////////////////////
 
     /**
-     * This method updates the status of whichever client called the current command
+     * Registers the listener that receives every response for a client, replacing any listener already registered for
+     * it. The listener may be registered before the client connects.
+     *
+     * @param clientID - the ClientID to listen to
+     * @param listener - the listener
+     */
+    public void addResponseListener(Long clientID, ResponseListener listener)
+    {
+        this.responseListeners.put(clientID, listener);
+    }
+
+    /**
+     * Stops delivering responses for a client.
+     *
+     * @param clientID - the ClientID that is no longer listened to
+     */
+    public void removeResponseListener(Long clientID)
+    {
+        this.responseListeners.remove(clientID);
+    }
+
+    /**
+     * Starts collecting a client's responses instead of delivering each one.
+     *
+     * @param clientID - the ClientID submitting a batch of commands
+     */
+    public void beginBatch(Long clientID)
+    {
+        this.batches.put(clientID, new StringBuilder());
+    }
+
+    /**
+     * Delivers every response collected since beginBatch() to the client's listener in one block, one response per
+     * line. The block also becomes the client's status.
+     *
+     * @param clientID - the ClientID submitting a batch of commands
+     */
+    public void endBatch(Long clientID)
+    {
+        StringBuilder batch = this.batches.remove(clientID);
+        if (batch == null || batch.length() == 0)
+        {
+            return;
+        }
+
+        String combined = batch.toString();
+        Client client = clientList.get(clientID);
+        if (client != null)
+        {
+            client.setStatus(combined);
+        }
+
+        ResponseListener listener = this.responseListeners.get(clientID);
+        if (listener != null)
+        {
+            listener.responseReady(clientID, combined);
+        }
+    }
+
+    /**
+     * This method updates the status of whichever client called the current command and delivers it to that client's
+     * listener only. While the client is running a batch the response is collected instead, to be delivered with the
+     * rest of the batch.
      *
      * @param clientID - the ClientID of the command
      * @param status - the status
      */
     public void updateClientStatus(Long clientID, String status)
     {
-        if (clientList.get(clientID) != null)
+        Client client = clientList.get(clientID);
+        if (client != null)
         {
-            clientList.get(clientID).setStatus(status);
+            client.setStatus(status);
+        }
+        String response = client != null ? status : "invalid-client-id;";
+
+        StringBuilder batch = this.batches.get(clientID);
+        if (batch != null)
+        {
+            if (batch.length() > 0)
+            {
+                batch.append('\n');
+            }
+            batch.append(response);
+            return;
+        }
+
+        ResponseListener listener = this.responseListeners.get(clientID);
+        if (listener != null)
+        {
+            listener.responseReady(clientID, response);
         }
-        this.setChanged();
-        this.notifyObservers();
     }
 
     ///////////////////////// Helper Methods for Sorting Lists of Books ////////////////////////////
@@ -679,29 +1120,3 @@ public class Library extends Observable implements LibrarySubject
         Library lib = new Library();
     }
 }
-
-/**
- * A runnable class that tells the library to check the time.
- */
-class CheckTimeTask extends TimerTask
-{
-    private Library library;
-
-    /**
-     * Constructor to create a CheckTimeTask.
-     *
-     * @param library - The library that is checking the time.
-     */
-    public CheckTimeTask(Library library)
-    {
-        this.library = library;
-    }
-
-    /**
-     * Tells the library to checkTime when the Thread is created.
-     */
-    public void run()
-    {
-        library.checkTime();
-    }
-}
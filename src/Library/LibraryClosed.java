@@ -38,10 +38,11 @@ public class LibraryClosed implements LibraryState
      * @param visitorStorage
      * @param timeClock
      * @param bookStorage
+     * @param journal
      * @return
      */
     public String stateCheckOutBook(ArrayList<String> bkID, Long vID, VisitorStorage visitorStorage, TimeClock timeClock,
-                                    BookStorage bookStorage)
+                                    BookStorage bookStorage, Journal journal)
     {
         return "The Library is closed from 19:00 to 8:00 - Cannot Checkout Book";
     }
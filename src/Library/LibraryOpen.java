@@ -6,7 +6,6 @@ import Visitors.Visit;
 import Visitors.Visitor;
 import Visitors.VisitorStorage;
 import java.util.ArrayList;
-import java.util.Calendar;
 
 /**
  * Implements how state dependent commands are executed when the library is open.
@@ -41,7 +40,7 @@ public class LibraryOpen implements LibraryState
 
         if (visit != null)
         {
-            response += visitorID + "," + visit.getFormattedDate(visit.getStartDateTime()) + "," + visit.getFormattedTime(visit.getStartDateTime()) + ";";
+            response += visitorID + "," + TimeClock.formatDate(visit.getStartDateTime()) + "," + TimeClock.formatTime(visit.getStartDateTime()) + ";";
         }
         else
         {
@@ -58,33 +57,26 @@ public class LibraryOpen implements LibraryState
      * @param visitorStorage - the visitor storage that is being manipulated
      * @param timeClock - the timeclock
      * @param bookStorage - the book storage
+     * @param journal - the journal the checkout is recorded in
      * @return A String representing the output that will displayed to the user.
      */
-    public String stateCheckOutBook(ArrayList<String> bkID, Long vID, VisitorStorage visitorStorage, TimeClock timeClock, BookStorage bookStorage)
+    public String stateCheckOutBook(ArrayList<String> bkID, Long vID, VisitorStorage visitorStorage, TimeClock timeClock,
+                                    BookStorage bookStorage, Journal journal)
     {
         Visitor currentV = visitorStorage.getVisitor(vID);
-        ArrayList<Book> books = new ArrayList<>();
 
         if(bookStorage.getLastSearch() == null || bookStorage.getLastSearch().size() == 0)
             return "borrow,no-recent-search-found;";
 
-        for(String id : bkID)
+        ArrayList<Book> books = bookStorage.resolveLastSearch(bkID);
+        long checkoutDate = timeClock.now();
+        ArrayList<Book> checkedOut = currentV.checkOutBooks(books, checkoutDate);
+        if (!checkedOut.isEmpty())
         {
-            for (Book bk : bookStorage.getLastSearch())
-            {
-                if (bk.getIsbn().compareTo(id) == 0)
-                {
-                    books.add(bk);
-                    break;
-                }
-            }
+            journal.recordBorrow(vID, checkedOut, checkoutDate);
         }
-        currentV.checkOutBooks(books,timeClock.getCalendarDate());
 
-        Calendar c = timeClock.getCalendarDate();
-        c.add(Calendar.DAY_OF_WEEK, 7);
-        return "borrow," + c.get(Calendar.YEAR) + "/" + c.get(Calendar.MONTH) + "/" + c.get(Calendar.DAY_OF_MONTH)
-                + ";" ;
+        return "borrow," + TimeClock.formatDate(TimeClock.plusDays(checkoutDate, 7)) + ";" ;
     }
 
     /**
@@ -99,27 +91,13 @@ public class LibraryOpen implements LibraryState
      */
     public String stateUndoCheckout(ArrayList<String> bkID,Long vID, VisitorStorage visitorStorage, TimeClock timeClock, BookStorage bookStorage)
     {
-        Visitor currentv = visitorStorage.getVisitor(vID);
-        ArrayList<Book> books = new ArrayList<>();
+        ArrayList<Book> books = bookStorage.resolveLastSearch(bkID);
 
-        for(String id : bkID)
-        {
-            for (Book bk : bookStorage.getLastSearch())
-            {
-                if (bk.getIsbn().compareTo(id) == 0)
-                {
-                    books.add(bk);
-                    break;
-                }
-            }
-        }
-
-        Calendar c = timeClock.getCalendarDate();
+        long c = timeClock.now();
 
-        currentv.returnBooks(books,c);
+        visitorStorage.returnBooks(vID, books, c);
 
-        return "borrow," + c.get(Calendar.YEAR) + "/" + c.get(Calendar.MONTH) + "/" + c.get(Calendar.DAY_OF_MONTH)
-                + ";" ;
+        return "borrow," + TimeClock.formatDate(c) + ";" ;
 
     }
 }
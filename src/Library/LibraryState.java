@@ -14,5 +14,5 @@ public interface LibraryState
 {
     String stateBeginVisit(Long visitorID, VisitorStorage visitorStorage);
     String stateCheckOutBook(ArrayList<String> bkID, Long vID, VisitorStorage visitorStorage, TimeClock timeClock,
-                                    BookStorage bookStorage);
+                                    BookStorage bookStorage, Journal journal);
 }
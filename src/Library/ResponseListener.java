@@ -0,0 +1,19 @@
+package Library;
+
+/**
+ * Receives the responses the library produces for a single client. A listener is registered under a client ID and is
+ * only ever called with that client's responses, so the cost of delivering a response does not depend on how many
+ * terminals are connected.
+ *
+ * @author Kyle Kaniecki
+ */
+public interface ResponseListener
+{
+    /**
+     * Called when the library has a new response for the client this listener is registered under.
+     *
+     * @param clientID - The ID of the client the response is for.
+     * @param response - The response, or "invalid-client-id;" if the client is not connected.
+     */
+    void responseReady(Long clientID, String response);
+}
@@ -0,0 +1,118 @@
+package Library;
+
+import Books.BookStorage;
+import Books.BookStorageCodec;
+import Visitors.VisitorStorage;
+import Visitors.VisitorStorageCodec;
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * A compact snapshot of the library's persistent state, taken at a known journal sequence number. The time clock and
+ * both storages are written together into one file so they always agree with each other, and the file is replaced
+ * atomically so a crash while writing leaves the previous snapshot intact.
+ *
+ * Snapshots use a versioned columnar binary format (see SnapshotWriter) rather than Java serialization, so they are
+ * smaller, load without reflection, and do not break when a class changes shape.
+ *
+ * @author Kyler Freas
+ */
+public class Snapshot
+{
+    private long sequence;
+    private TimeClock timeClock;
+    private VisitorStorage visitorStorage;
+    private BookStorage bookStorage;
+
+    /**
+     * Constructs a snapshot of the library's state.
+     *
+     * @param sequence - The journal sequence number the snapshot was taken at.
+     * @param timeClock - The library's time clock.
+     * @param visitorStorage - The library's visitor storage.
+     * @param bookStorage - The library's book storage.
+     */
+    public Snapshot(long sequence, TimeClock timeClock, VisitorStorage visitorStorage, BookStorage bookStorage)
+    {
+        this.sequence = sequence;
+        this.timeClock = timeClock;
+        this.visitorStorage = visitorStorage;
+        this.bookStorage = bookStorage;
+    }
+
+    public long getSequence()
+    {
+        return this.sequence;
+    }
+
+    public TimeClock getTimeClock()
+    {
+        return this.timeClock;
+    }
+
+    public VisitorStorage getVisitorStorage()
+    {
+        return this.visitorStorage;
+    }
+
+    public BookStorage getBookStorage()
+    {
+        return this.bookStorage;
+    }
+
+    /**
+     * Writes the snapshot to a temporary file and then moves it over the given file. The book storage is written before
+     * the visitor storage so that checkouts can be resolved against the owned books when the snapshot is read.
+     *
+     * @param file - The snapshot file.
+     */
+    public void write(File file) throws IOException
+    {
+        SnapshotWriter out = new SnapshotWriter();
+        out.writeInt(this.timeClock.getOffDay());
+        out.writeInt(this.timeClock.getOffHour());
+        BookStorageCodec.write(this.bookStorage, out);
+        VisitorStorageCodec.write(this.visitorStorage, out);
+
+        File temp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream fileOut = new FileOutputStream(temp))
+        {
+            out.finish(fileOut, this.sequence);
+            fileOut.getFD().sync();
+        }
+
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Reads a snapshot and links its storages to the library.
+     *
+     * @param file - The snapshot file.
+     * @param library - The library the snapshot is being loaded into.
+     * @return The snapshot, or null if there is no readable snapshot.
+     */
+    public static Snapshot read(File file, Library library)
+    {
+        if (!file.exists())
+        {
+            return null;
+        }
+
+        try
+        {
+            SnapshotReader in = new SnapshotReader(file);
+            TimeClock timeClock = new TimeClock(in.readInt(), in.readInt());
+            BookStorage bookStorage = BookStorageCodec.read(in, library);
+            VisitorStorage visitorStorage = VisitorStorageCodec.read(in, library, bookStorage.getBooks());
+            return new Snapshot(in.getSequence(), timeClock, visitorStorage, bookStorage);
+        }
+        catch (IOException | RuntimeException e)
+        {
+            System.out.println("Snapshot could not be read");
+            e.printStackTrace();
+        }
+
+        return null;
+    }
+}
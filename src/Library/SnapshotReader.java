@@ -0,0 +1,162 @@
+package Library;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads the columns of a binary snapshot written by a SnapshotWriter. The file is read whole into a heap buffer with
+ * a single channel read, and the string table is decoded once up front so string columns resolve to shared String
+ * instances.
+ *
+ * The file is not memory mapped: a mapping lasts until its buffer is garbage collected, and on some platforms a mapped
+ * file cannot be replaced, which would make the next checkpoint's move over the snapshot fail.
+ *
+ * @author Kyler Freas
+ */
+public class SnapshotReader
+{
+    private ByteBuffer buffer;
+    private int version;
+    private long sequence;
+    private String[] strings;
+
+    /**
+     * Reads a snapshot file and its header and string table. The file is closed before this returns.
+     *
+     * @param file - The snapshot file.
+     */
+    public SnapshotReader(File file) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ))
+        {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE)
+            {
+                throw new IOException(file + " is too large to be an LBMS snapshot");
+            }
+
+            this.buffer = ByteBuffer.allocate((int) size);
+            while (this.buffer.hasRemaining())
+            {
+                if (channel.read(this.buffer) < 0)
+                {
+                    throw new IOException(file + " was cut short while it was being read");
+                }
+            }
+            this.buffer.flip();
+        }
+
+        if (this.buffer.remaining() < 16 || this.buffer.getInt() != SnapshotWriter.MAGIC)
+        {
+            throw new IOException(file + " is not an LBMS snapshot");
+        }
+
+        this.version = this.buffer.getInt();
+        if (this.version < 1 || this.version > SnapshotWriter.VERSION)
+        {
+            throw new IOException(file + " has unsupported snapshot version " + this.version);
+        }
+
+        this.sequence = this.buffer.getLong();
+
+        this.strings = new String[this.buffer.getInt()];
+        byte[] bytes = new byte[64];
+        for (int i = 0; i < this.strings.length; i++)
+        {
+            int length = this.buffer.getInt();
+            if (bytes.length < length)
+            {
+                bytes = new byte[Math.max(length, bytes.length * 2)];
+            }
+            this.buffer.get(bytes, 0, length);
+            this.strings[i] = new String(bytes, 0, length, StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Gets the format version the snapshot was written in, so columns added in later versions can be skipped when
+     * reading an older snapshot.
+     *
+     * @return The snapshot's format version.
+     */
+    public int getVersion()
+    {
+        return this.version;
+    }
+
+    /**
+     * Gets the journal sequence number the snapshot was taken at.
+     *
+     * @return The snapshot's journal sequence number.
+     */
+    public long getSequence()
+    {
+        return this.sequence;
+    }
+
+    /**
+     * Reads a single long value.
+     *
+     * @return The value read.
+     */
+    public long readLong()
+    {
+        return this.buffer.getLong();
+    }
+
+    /**
+     * Reads a single int value.
+     *
+     * @return The value read.
+     */
+    public int readInt()
+    {
+        return this.buffer.getInt();
+    }
+
+    /**
+     * Reads a column of long values.
+     *
+     * @return The column read.
+     */
+    public long[] readLongs()
+    {
+        long[] values = new long[this.buffer.getInt()];
+        this.buffer.asLongBuffer().get(values);
+        this.buffer.position(this.buffer.position() + values.length * Long.BYTES);
+        return values;
+    }
+
+    /**
+     * Reads a column of int values.
+     *
+     * @return The column read.
+     */
+    public int[] readInts()
+    {
+        int[] values = new int[this.buffer.getInt()];
+        this.buffer.asIntBuffer().get(values);
+        this.buffer.position(this.buffer.position() + values.length * Integer.BYTES);
+        return values;
+    }
+
+    /**
+     * Reads a column of strings, resolving each id through the string table.
+     *
+     * @return The column read. May contain nulls.
+     */
+    public String[] readStrings()
+    {
+        String[] values = new String[this.buffer.getInt()];
+        for (int i = 0; i < values.length; i++)
+        {
+            int id = this.buffer.getInt();
+            values[i] = id == SnapshotWriter.NULL_STRING ? null : this.strings[id];
+        }
+        return values;
+    }
+}
@@ -0,0 +1,162 @@
+package Library;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Writes the columns of a binary snapshot. Values are written column by column as length prefixed arrays of primitives,
+ * dates are written as milliseconds since the epoch, and every string is interned into a single string table so that a
+ * name repeated across thousands of records is only stored once.
+ *
+ * The columns are buffered until the writer is finished, at which point the header, the string table and the columns
+ * are written out in that order.
+ *
+ * @author Kyler Freas
+ */
+public class SnapshotWriter
+{
+    /**
+     * Marks a file as an LBMS snapshot ("LBMS" in ASCII).
+     */
+    static final int MAGIC = 0x4C424D53;
+
+    /**
+     * The snapshot format version written by this writer. Version 2 added the visitor ID allocator's counters.
+     */
+    static final int VERSION = 2;
+
+    /**
+     * Stands in for a null string in a string column.
+     */
+    static final int NULL_STRING = -1;
+
+    private ByteArrayOutputStream columns;
+    private DataOutputStream out;
+    private HashMap<String, Integer> stringIds;
+    private ArrayList<String> strings;
+
+    /**
+     * Creates a writer for an empty snapshot.
+     */
+    public SnapshotWriter()
+    {
+        this.columns = new ByteArrayOutputStream(64 * 1024);
+        this.out = new DataOutputStream(this.columns);
+        this.stringIds = new HashMap<>();
+        this.strings = new ArrayList<>();
+    }
+
+    /**
+     * Writes a single long value.
+     *
+     * @param value - The value to write.
+     */
+    public void writeLong(long value) throws IOException
+    {
+        this.out.writeLong(value);
+    }
+
+    /**
+     * Writes a single int value.
+     *
+     * @param value - The value to write.
+     */
+    public void writeInt(int value) throws IOException
+    {
+        this.out.writeInt(value);
+    }
+
+    /**
+     * Writes a column of long values.
+     *
+     * @param values - The column to write.
+     */
+    public void writeLongs(long[] values) throws IOException
+    {
+        this.out.writeInt(values.length);
+        for (long value : values)
+        {
+            this.out.writeLong(value);
+        }
+    }
+
+    /**
+     * Writes a column of int values.
+     *
+     * @param values - The column to write.
+     */
+    public void writeInts(int[] values) throws IOException
+    {
+        this.out.writeInt(values.length);
+        for (int value : values)
+        {
+            this.out.writeInt(value);
+        }
+    }
+
+    /**
+     * Writes a column of strings as ids into the string table.
+     *
+     * @param values - The column to write. May contain nulls.
+     */
+    public void writeStrings(String[] values) throws IOException
+    {
+        this.out.writeInt(values.length);
+        for (String value : values)
+        {
+            this.out.writeInt(this.intern(value));
+        }
+    }
+
+    /**
+     * Writes the finished snapshot: the header, the journal sequence number it was taken at, the string table and the
+     * columns.
+     *
+     * @param target - The stream to write the snapshot to.
+     * @param sequence - The journal sequence number the snapshot was taken at.
+     */
+    public void finish(OutputStream target, long sequence) throws IOException
+    {
+        DataOutputStream file = new DataOutputStream(new BufferedOutputStream(target));
+        file.writeInt(MAGIC);
+        file.writeInt(VERSION);
+        file.writeLong(sequence);
+
+        file.writeInt(this.strings.size());
+        for (String s : this.strings)
+        {
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            file.writeInt(bytes.length);
+            file.write(bytes);
+        }
+
+        this.out.flush();
+        this.columns.writeTo(file);
+        file.flush();
+    }
+
+    /**
+     * Looks up a string's id in the string table, adding it if it is not there yet.
+     *
+     * @param value - The string to intern.
+     * @return The string's id.
+     */
+    private int intern(String value)
+    {
+        if (value == null)
+        {
+            return NULL_STRING;
+        }
+
+        Integer id = this.stringIds.get(value);
+        if (id == null)
+        {
+            id = this.strings.size();
+            this.stringIds.put(value, id);
+            this.strings.add(value);
+        }
+        return id;
+    }
+}
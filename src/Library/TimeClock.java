@@ -1,22 +1,111 @@
 package Library;
 
 import java.io.*;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.zone.ZoneOffsetTransition;
+import java.time.zone.ZoneRules;
 import java.util.Calendar;
 import java.util.Date;
+import java.util.TimeZone;
+import java.util.Timer;
+import java.util.TimerTask;
 
 /**
  * The time clock keeps track of when the library should be open or closed as well as handling the advancing of time for
  * use in testing of the entire system.
  *
+ * Once started, the clock ticks at a fixed resolution and publishes the current library time together with its date
+ * and time already formatted for responses. Any thread can read the latest tick without locking, so the commands that
+ * print the date or time no longer format it themselves.
+ *
  * @author Nikolas Tilley
  * @author Kyler Freas
  */
 public class TimeClock implements java.io.Serializable
 {
-    private int dayOffset;
-    private int hourOffset;
+    /**
+     * Stands in for a time that has not happened, such as the return date of a book still checked out.
+     */
+    public static final long NEVER = Long.MIN_VALUE;
+
+    public static final long MILLIS_PER_HOUR = 60L * 60 * 1000;
+    public static final long MILLIS_PER_DAY = 24 * MILLIS_PER_HOUR;
+
+    private volatile int dayOffset;
+    private volatile int hourOffset;
     private static String file = "files/TimeClock.ser";
 
+    /**
+     * The latest tick, or null while the clock is stopped. Not persisted, it is taken again when the clock is started.
+     */
+    private transient volatile Tick tick;
+    private transient Timer timer;
+
+    /**
+     * How far the day offset moves real time, while it stays the same. Not persisted, it is worked out again when
+     * first needed.
+     */
+    private transient volatile DayShift dayShift;
+
+    /**
+     * The number of milliseconds the day offset adds to real time, which only changes when time is advanced or either
+     * end crosses a daylight saving change. Worked out once so that now() is only an addition.
+     */
+    private static final class DayShift
+    {
+        private final int days;
+        private final long millis;
+        private final long from;
+        private final long until;
+
+        private DayShift(long now, int days)
+        {
+            this.days = days;
+            this.millis = plusDays(now, days) - now;
+            this.from = now;
+
+            // Valid until the zone offset changes at either the real time or the shifted time
+            ZoneRules rules = ZoneId.systemDefault().getRules();
+            ZoneOffsetTransition realChange = rules.nextTransition(Instant.ofEpochMilli(now));
+            ZoneOffsetTransition shiftedChange = rules.nextTransition(Instant.ofEpochMilli(now + this.millis));
+            long until = Long.MAX_VALUE;
+            if (realChange != null)
+            {
+                until = realChange.toEpochSecond() * 1000;
+            }
+            if (shiftedChange != null)
+            {
+                until = Math.min(until, shiftedChange.toEpochSecond() * 1000 - this.millis);
+            }
+            this.until = until;
+        }
+    }
+
+    /**
+     * The library time at one tick of the clock, with the strings used in responses formatted once.
+     */
+    private static final class Tick
+    {
+        private final long millis;
+        private final long day;
+        private final String date;
+        private final String time;
+        private final String dateTime;
+
+        private Tick(long millis, Tick previous)
+        {
+            this.millis = millis;
+            this.day = dayOf(millis);
+            // The date only changes once a day, so most ticks share the previous one
+            this.date = previous != null && previous.day == this.day ? previous.date : formatDate(millis);
+            this.time = formatTime(millis);
+            this.dateTime = this.date + "," + this.time;
+        }
+    }
+
     /**
      * Creates a Time clock with no offsets applied.
      */
@@ -38,6 +127,39 @@ public class TimeClock implements java.io.Serializable
         this.hourOffset = hourOffset;
     }
 
+    /**
+     * Starts ticking the clock. Until it is started, every formatted date or time is worked out when it is asked for.
+     *
+     * @param resolution - The time between ticks, in milliseconds.
+     */
+    public synchronized void start(long resolution)
+    {
+        this.stop();
+        this.tick();
+        this.timer = new Timer("Time Clock", true);
+        this.timer.scheduleAtFixedRate(new TimerTask()
+        {
+            @Override
+            public void run()
+            {
+                tick();
+            }
+        }, resolution, resolution);
+    }
+
+    /**
+     * Stops ticking the clock.
+     */
+    public synchronized void stop()
+    {
+        if (this.timer != null)
+        {
+            this.timer.cancel();
+            this.timer = null;
+        }
+        this.tick = null;
+    }
+
     /**
      * Gets the number of offset days.
      *
@@ -65,23 +187,35 @@ public class TimeClock implements java.io.Serializable
      */
     public Date getCurrentDateTime()
     {
-        Calendar c = Calendar.getInstance();
-        c.add(c.DAY_OF_WEEK, dayOffset);
-        c.add(c.HOUR_OF_DAY, hourOffset);
-        return c.getTime();
+        return new Date(this.now());
     }
 
     /**
-     * Gets the date in calendar format.
+     * Gets the current library time, with the day and hour offsets applied.
      *
-     * @return A Calendar representing the day of the week and hour of the day.
+     * @return The library time in milliseconds since the epoch.
      */
-    public Calendar getCalendarDate()
+    public long now()
     {
-        Calendar c = Calendar.getInstance();
-        c.add(c.DAY_OF_WEEK, dayOffset);
-        c.add(c.HOUR_OF_DAY, hourOffset);
-        return c;
+        long now = System.currentTimeMillis();
+        int days = this.dayOffset;
+        DayShift shift = this.dayShift;
+        if (shift == null || shift.days != days || now < shift.from || now >= shift.until)
+        {
+            shift = new DayShift(now, days);
+            this.dayShift = shift;
+        }
+        return now + shift.millis + this.hourOffset * MILLIS_PER_HOUR;
+    }
+
+    /**
+     * Gets the library time as of the latest tick. Unlike now(), this only moves once per tick.
+     *
+     * @return The library time of the latest tick in milliseconds since the epoch.
+     */
+    public long getTickTime()
+    {
+        return this.current().millis;
     }
 
     /**
@@ -91,8 +225,7 @@ public class TimeClock implements java.io.Serializable
      */
     public String getFormattedDate()
     {
-        Calendar c = getCalendarDate();
-        return c.get(Calendar.YEAR) + "/" + c.get(Calendar.MONTH) + "/" + c.get(Calendar.DAY_OF_MONTH);
+        return this.current().date;
     }
 
     /**
@@ -102,8 +235,7 @@ public class TimeClock implements java.io.Serializable
      */
     public String getFormattedTime()
     {
-        Calendar c = getCalendarDate();
-        return c.get(Calendar.HOUR_OF_DAY) + ":" + c.get(Calendar.MINUTE) + ":" + c.get(Calendar.SECOND);
+        return this.current().time;
     }
 
     /**
@@ -113,9 +245,126 @@ public class TimeClock implements java.io.Serializable
      */
     public String getFormattedDateTime()
     {
-        Calendar c = getCalendarDate();
-        return c.get(Calendar.YEAR) + "/" + c.get(Calendar.MONTH) + "/" + c.get(Calendar.DAY_OF_MONTH) + "," +
-                c.get(Calendar.HOUR_OF_DAY) + ":" + c.get(Calendar.MINUTE) + ":" + c.get(Calendar.SECOND);
+        return this.current().dateTime;
+    }
+
+    /**
+     * Gets the latest tick, or a fresh one if the clock has not been started.
+     */
+    private Tick current()
+    {
+        Tick tick = this.tick;
+        return tick != null ? tick : new Tick(this.now(), null);
+    }
+
+    /**
+     * Publishes the current library time as the latest tick. Synchronized with advanceTime so a tick taken before an
+     * advance can never be published after it.
+     */
+    private synchronized void tick()
+    {
+        this.tick = new Tick(this.now(), this.tick);
+    }
+
+    /**
+     * Formats a date in the form YYYY/MM/DD. Months count from 0, as they always have in the protocol.
+     *
+     * @param millis - The date in milliseconds since the epoch.
+     * @return A String representing the formatted date.
+     */
+    public static String formatDate(long millis)
+    {
+        LocalDateTime t = toLocal(millis);
+        return t.getYear() + "/" + (t.getMonthValue() - 1) + "/" + t.getDayOfMonth();
+    }
+
+    /**
+     * Formats a time in the form HH:MM:SS.
+     *
+     * @param millis - The time in milliseconds since the epoch.
+     * @return A String representing the formatted time.
+     */
+    public static String formatTime(long millis)
+    {
+        LocalDateTime t = toLocal(millis);
+        return t.getHour() + ":" + t.getMinute() + ":" + t.getSecond();
+    }
+
+    /**
+     * Formats a date and time in the form YYYY/MM/DD,HH:MM:SS.
+     *
+     * @param millis - The date and time in milliseconds since the epoch.
+     * @return A String representing the formatted date and time.
+     */
+    public static String formatDateTime(long millis)
+    {
+        LocalDateTime t = toLocal(millis);
+        return t.getYear() + "/" + (t.getMonthValue() - 1) + "/" + t.getDayOfMonth() + "," +
+                t.getHour() + ":" + t.getMinute() + ":" + t.getSecond();
+    }
+
+    /**
+     * Gets the hour of the day an instant falls on in the default time zone.
+     *
+     * @param millis - The instant in milliseconds since the epoch.
+     * @return The hour of the day, from 0 to 23.
+     */
+    public static int hourOf(long millis)
+    {
+        long local = millis + TimeZone.getDefault().getOffset(millis);
+        return (int) (Math.floorMod(local, MILLIS_PER_DAY) / MILLIS_PER_HOUR);
+    }
+
+    /**
+     * Gets the day an instant falls on in the default time zone, counted in local days since the epoch.
+     *
+     * @param millis - The instant in milliseconds since the epoch.
+     * @return The day number.
+     */
+    public static long dayOf(long millis)
+    {
+        return Math.floorDiv(millis + TimeZone.getDefault().getOffset(millis), MILLIS_PER_DAY);
+    }
+
+    /**
+     * Gets the first instant after the given one that falls on the start of an hour of the day in the default time
+     * zone.
+     *
+     * @param millis - The instant to start from, in milliseconds since the epoch.
+     * @param hour - The hour of the day, from 0 to 23.
+     * @return The next start of the hour, in milliseconds since the epoch.
+     */
+    public static long nextHourOf(long millis, int hour)
+    {
+        ZonedDateTime from = Instant.ofEpochMilli(millis).atZone(ZoneId.systemDefault());
+        ZonedDateTime next = from.toLocalDate().atTime(hour, 0).atZone(ZoneId.systemDefault());
+        if (!next.isAfter(from))
+        {
+            next = from.toLocalDate().plusDays(1).atTime(hour, 0).atZone(ZoneId.systemDefault());
+        }
+        return next.toInstant().toEpochMilli();
+    }
+
+    /**
+     * Adds a number of days to an instant in the default time zone, keeping its time of day. Across a daylight saving
+     * change a day is not 24 hours long, so this is not the same as adding MILLIS_PER_DAY.
+     *
+     * @param millis - The instant, in milliseconds since the epoch.
+     * @param days - The number of days to add. May be negative.
+     * @return The same time of day, the given number of days later.
+     */
+    public static long plusDays(long millis, int days)
+    {
+        if (days == 0)
+        {
+            return millis;
+        }
+        return Instant.ofEpochMilli(millis).atZone(ZoneId.systemDefault()).plusDays(days).toInstant().toEpochMilli();
+    }
+
+    private static LocalDateTime toLocal(long millis)
+    {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault());
     }
 
     /**
@@ -125,10 +374,16 @@ public class TimeClock implements java.io.Serializable
      * @param days - The number of days to advance.
      * @param hours - The number of hours to advance.
      */
-    public void advanceTime(int days, int hours)
+    public synchronized void advanceTime(int days, int hours)
     {
         dayOffset += days;
         hourOffset += hours;
+
+        // Responses after an advance should not wait for the next tick
+        if (this.timer != null)
+        {
+            this.tick();
+        }
     }
 
     /**
@@ -7,20 +7,23 @@ import Visitors.Visit;
 import Visitors.Visitor;
 
 import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
+ * Decides what each client may do with the library. Every connected client has a session, which holds its state and
+ * the visitor ID of the user logged in on it, and a command is handed to the state of the client that sent it. Clients
+ * without a session are disconnected.
  *
+ * One proxy serves every client of a library, however many terminals there are. The states themselves hold nothing
+ * about a client, so there is only ever one of each.
  *
  * @author Nikolas Tilley
  */
 public class LibraryProtectionProxy implements LibrarySubject
 {
-    private final int DISCONNECTED_STATE = 0;
-    private final int LOGGED_OUT_STATE = 1;
-    private final int VISITOR_LOGGED_IN_STATE = 2;
-    private final int EMPLOYEE_LOGGED_IN_STATE = 3;
-    private ArrayList<LibraryProtectionProxyState> stateList;
-    private LibraryProtectionProxyState activeState;
+    private EnumMap<StateId, LibraryProtectionProxyState> states;
+    private ConcurrentHashMap<Long, Session> sessions;
     private Library library;
 
     // Clients either have proxies or a proxy knows about a client
@@ -28,24 +31,25 @@ public class LibraryProtectionProxy implements LibrarySubject
     public LibraryProtectionProxy( Library library )
     {
         this.library = library;
+        this.sessions = new ConcurrentHashMap<>();
 
-        stateList = new ArrayList<LibraryProtectionProxyState>();
-        stateList.add(new DisconnectedState(library));
-        stateList.add(new LoggedOutState(library));
-        stateList.add(new VisitorLoggedInState(library));
-        stateList.add(new EmployeeLoggedInState(library));
-
-        setState(DISCONNECTED_STATE);
+        states = new EnumMap<>(StateId.class);
+        states.put(StateId.DISCONNECTED, new DisconnectedState(library));
+        states.put(StateId.LOGGED_OUT, new LoggedOutState(library));
+        states.put(StateId.VISITOR_LOGGED_IN, new VisitorLoggedInState(library, this.sessions));
+        states.put(StateId.EMPLOYEE_LOGGED_IN, new EmployeeLoggedInState(library));
     }
 
     /**
-     * Sets the state of the protection proxy
+     * Gets the state a client is in.
      *
-     * @param index the index of the state to change to
+     * @param clientID - The client.
+     * @return The state the client's commands are handed to.
      */
-    private void setState(int index)
+    private LibraryProtectionProxyState stateOf(Long clientID)
     {
-        activeState = stateList.get(index);
+        Session session = sessions.get(clientID);
+        return states.get(session == null ? StateId.DISCONNECTED : session.state);
     }
 
 
@@ -53,21 +57,21 @@ public class LibraryProtectionProxy implements LibrarySubject
     // Library Book Search
     public void bookSearch(Long clientID, String title, ArrayList<String> authors, String isbn, String publisher, String sortOrder)
     {
-        activeState.bookSearch(clientID, title, authors, isbn, publisher, sortOrder);
+        stateOf(clientID).bookSearch(clientID, title, authors, isbn, publisher, sortOrder);
     }
 
     // search,
     // Book Store Search
     public void bookStoreSearch(Long clientID, String title, ArrayList<String> authors, String isbn, String publisher, String sortOrder)
     {
-        activeState.bookStoreSearch(clientID, title, authors, isbn, publisher, sortOrder);
+        stateOf(clientID).bookStoreSearch(clientID, title, authors, isbn, publisher, sortOrder);
     }
 
     // borrow,
     // Borrow book
     public void borrowBook(Long clientID, ArrayList<String> bookID,Long visitorID)
     {
-        activeState.borrowBook(clientID, bookID, visitorID);
+        stateOf(clientID).borrowBook(clientID, bookID, visitorID);
     }
 
     /**
@@ -78,7 +82,7 @@ public class LibraryProtectionProxy implements LibrarySubject
      */
     public void undoBorrowBook(Long clientID, ArrayList<String> bookID,Long visitorID)
     {
-        activeState.undoBorrowBook(clientID,bookID,visitorID);
+        stateOf(clientID).undoBorrowBook(clientID,bookID,visitorID);
     }
 
     // Todo supply argument signature
@@ -86,7 +90,7 @@ public class LibraryProtectionProxy implements LibrarySubject
     // Book Purchase
     public void purchaseBooks(Long clientID, int quantity, ArrayList<Integer> ids)
     {
-        activeState.purchaseBooks(clientID, quantity, ids);
+        stateOf(clientID).purchaseBooks(clientID, quantity, ids);
     }
 
     /**
@@ -97,7 +101,7 @@ public class LibraryProtectionProxy implements LibrarySubject
      */
     public void undoPurchaseBooks(Long clientID, int quantity, ArrayList<Integer> ids)
     {
-        activeState.undoPurchaseBooks(clientID,quantity,ids);
+        stateOf(clientID).undoPurchaseBooks(clientID,quantity,ids);
     }
 
     // Todo supply argument signature
@@ -105,35 +109,35 @@ public class LibraryProtectionProxy implements LibrarySubject
     // Register Visitor
     public void registerVisitor(Long clientID, String firstName, String lastName, String address, String phoneNumber)
     {
-        activeState.registerVisitor(clientID, firstName, lastName, address, phoneNumber);
+        stateOf(clientID).registerVisitor(clientID, firstName, lastName, address, phoneNumber);
     }
 
     // arrive,
     // Begin Visit
     public void beginVisit(Long clientID, Long visitorID)
     {
-        activeState.beginVisit(clientID, visitorID);
+        stateOf(clientID).beginVisit(clientID, visitorID);
     }
 
     // depart,
     // End Visit
     public void endVisit(Long clientID, Long visitorID)
     {
-        activeState.endVisit(clientID, visitorID);
+        stateOf(clientID).endVisit(clientID, visitorID);
     }
 
     // borrowed,
     // Find Borrowed Books
     public void getVisitorCheckedOutBooks(Long clientID, Long visitorID)
     {
-        activeState.getVisitorCheckedOutBooks(clientID, visitorID);
+        stateOf(clientID).getVisitorCheckedOutBooks(clientID, visitorID);
     }
 
     // pay,
     // Pay fine
     public void payFine(Long clientID, Long visitorID, int amount)
     {
-        activeState.payFine(clientID, visitorID, amount);
+        stateOf(clientID).payFine(clientID, visitorID, amount);
     }
 
     /**
@@ -144,42 +148,42 @@ public class LibraryProtectionProxy implements LibrarySubject
      */
     public void undoPayFine(Long clientID, Long visitorID, int amount)
     {
-        activeState.undoPayFine(clientID, visitorID, amount);
+        stateOf(clientID).undoPayFine(clientID, visitorID, amount);
     }
 
     // report,
     // Library Statistic Report
     public void generateReport(Long clientID, int days)
     {
-        activeState.generateReport(clientID, days);
+        stateOf(clientID).generateReport(clientID, days);
     }
 
     // datetime,
     // Current Date Time
     public void getFormattedDateTime(Long clientID)
     {
-        activeState.getFormattedDateTime(clientID);
+        stateOf(clientID).getFormattedDateTime(clientID);
     }
 
     // advance,
     // Advance Time
     public void advanceTime(Long clientID, int days, int hours)
     {
-        activeState.advanceTime(clientID, days, hours);
+        stateOf(clientID).advanceTime(clientID, days, hours);
     }
 
     // return,
     // Return book
     public void returnBooks(Long clientID, Long visitorID, ArrayList<String> isbns)
     {
-        activeState.returnBooks(clientID, visitorID, isbns);
+        stateOf(clientID).returnBooks(clientID, visitorID, isbns);
     }
 
     // shutdown,
     // Shut Down
     public void shutdown(Long clientID)
     {
-        activeState.shutdown(clientID);
+        stateOf(clientID).shutdown(clientID);
     }
 
     // connect,
@@ -187,10 +191,8 @@ public class LibraryProtectionProxy implements LibrarySubject
     public void clientConnect(Long clientID)
     {
         // Should add client to library's list of observers
-        activeState.clientConnect(clientID);
-
-        if (activeState instanceof DisconnectedState)
-            setState(LOGGED_OUT_STATE);
+        stateOf(clientID).clientConnect(clientID);
+        sessions.putIfAbsent(clientID, Session.LOGGED_OUT);
     }
 
     // disconnect,
@@ -198,39 +200,37 @@ public class LibraryProtectionProxy implements LibrarySubject
     public void clientDisconnect(Long clientID)
     {
         // should remove client from library's list of observers
-        if (activeState instanceof EmployeeLoggedInState || activeState instanceof VisitorLoggedInState)
-            activeState.logout(clientID);
+        Session session = sessions.get(clientID);
+        if (session != null && session.visitorID != null)
+            stateOf(clientID).logout(clientID);
 
-        activeState.clientDisconnect(clientID);
-        setState(DISCONNECTED_STATE);
+        stateOf(clientID).clientDisconnect(clientID);
+        sessions.remove(clientID);
     }
 
     // create,
     // Create New Account
     public void createAccount(Long clientID, String username, String password, String role, Long visitorID)
     {
-        activeState.createAccount(clientID, username, password, role, visitorID);
+        stateOf(clientID).createAccount(clientID, username, password, role, visitorID);
     }
 
     // login,
     // Log In
     public void login(Long clientID, String username, String password)
     {
-        activeState.login(clientID, username, password);
-
-        if(activeState instanceof LoggedOutState) {
-            Visitor loggedInUser = library.getVisitorStorage().getUsernames().get(username);
+        Session session = sessions.get(clientID);
+        stateOf(clientID).login(clientID, username, password);
 
+        // The library only gives the client a visitor if the password was right
+        if (session == Session.LOGGED_OUT)
+        {
+            Visitor loggedInUser = library.getClient(clientID).getVisitor();
             if (loggedInUser != null)
             {
-                library.getClient(clientID).setVisitor(loggedInUser);
-
-                if (loggedInUser.getRole().equalsIgnoreCase("employee")) {
-                    this.setState(EMPLOYEE_LOGGED_IN_STATE);
-                } else if (loggedInUser.getRole().equalsIgnoreCase("visitor")) {
-                    this.setState(VISITOR_LOGGED_IN_STATE);
-                } else
-                    ;//Do Nothing
+                Session loggedIn = Session.loggedIn(loggedInUser);
+                if (loggedIn != null)
+                    sessions.replace(clientID, session, loggedIn);
             }
         }
     }
@@ -240,8 +240,8 @@ public class LibraryProtectionProxy implements LibrarySubject
     // Log Out
     public void logout(Long clientID)
     {
-        activeState.logout(clientID);
-        setState(LOGGED_OUT_STATE);
+        stateOf(clientID).logout(clientID);
+        sessions.replace(clientID, Session.LOGGED_OUT);
     }
 
 
@@ -249,31 +249,50 @@ public class LibraryProtectionProxy implements LibrarySubject
     // Set book information service
     public void setService(Long clientID, String service)
     {
-        activeState.setService(clientID, service );
+        stateOf(clientID).setService(clientID, service );
     }
 
 
     // NOT GOING TO BE IN STATE
     public void forwardResponse(Long clientID, String response)
     {
-        if (!(activeState instanceof DisconnectedState))
+        if (sessions.containsKey(clientID))
             library.forwardResponse(clientID, response);
     }
 
-    public boolean isConnected()
+    // NOT GOING TO BE IN STATE
+    // Batching only changes how responses are delivered, so it is allowed in every state
+    public void beginBatch(Long clientID)
+    {
+        library.beginBatch(clientID);
+    }
+
+    public void endBatch(Long clientID)
+    {
+        library.endBatch(clientID);
+    }
+
+    /**
+     * Checks whether a client is connected.
+     *
+     * @param clientID - The client.
+     * @return True if the client has a session.
+     */
+    public boolean isConnected(Long clientID)
     {
-        if (activeState instanceof DisconnectedState)
-            return false;
-        else
-            return true;
+        return sessions.containsKey(clientID);
     }
 
+    /**
+     * Gets the visitor ID of the user logged in on a client.
+     *
+     * @param clientID - The client.
+     * @return The visitor ID, or null if no one is logged in on the client.
+     */
     public Long getClientVisitorID(Long clientID)
     {
-        if (activeState instanceof EmployeeLoggedInState || activeState instanceof VisitorLoggedInState)
-            return library.getClient(clientID).getVisitor().getID();
-        else
-            return null;
+        Session session = sessions.get(clientID);
+        return session == null ? null : session.visitorID;
     }
 
 }
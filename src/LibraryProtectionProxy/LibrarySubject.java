@@ -131,6 +131,19 @@ public interface LibrarySubject
     // Passes responses from the UIS to the library if the commands cannot make it there
     void forwardResponse(Long clientID, String response);
 
+    /**
+     * Starts collecting a client's responses instead of delivering each one, so that a batch of commands produces a
+     * single combined response.
+     * @param clientID - the clientID submitting the batch
+     */
+    void beginBatch(Long clientID);
+
+    /**
+     * Delivers every response collected since beginBatch as one block, one response per line.
+     * @param clientID - the clientID submitting the batch
+     */
+    void endBatch(Long clientID);
+
 
 
 }
@@ -0,0 +1,64 @@
+package LibraryProtectionProxy;
+
+import Visitors.Visitor;
+
+/**
+ * What the protection proxy knows about a connected client: which state it is in, and the visitor ID of the user logged
+ * in on it. Both are cached when the client logs in, so checking what a client may do is a single field read rather
+ * than a lookup of its visitor in the library.
+ *
+ * Sessions never change once created. Logging in or out replaces the client's session. Every client that is connected
+ * but not logged in shares the same session, so a client costs one map entry, plus one small session while a user is
+ * logged in on it.
+ *
+ * Not persisted in storage, a client has to log in again after the library is restarted.
+ *
+ * @author Nikolas Tilley
+ */
+final class Session
+{
+    /**
+     * The session of a client that is connected but not logged in.
+     */
+    static final Session LOGGED_OUT = new Session(StateId.LOGGED_OUT, null);
+
+    /**
+     * The client's state.
+     */
+    final StateId state;
+
+    /**
+     * The ID of the visitor logged in on the client, or null if no one is.
+     */
+    final Long visitorID;
+
+    private Session(StateId state, Long visitorID)
+    {
+        this.state = state;
+        this.visitorID = visitorID;
+    }
+
+    /**
+     * Creates the session of a client a user has just logged in on.
+     *
+     * @param visitor - The user that logged in.
+     * @return The session for the user's role, or null if the role is not one that can log in.
+     */
+    static Session loggedIn(Visitor visitor)
+    {
+        String role = visitor.getRole();
+        if (role == null)
+        {
+            return null;
+        }
+        else if (role.equalsIgnoreCase("employee"))
+        {
+            return new Session(StateId.EMPLOYEE_LOGGED_IN, visitor.getID());
+        }
+        else if (role.equalsIgnoreCase("visitor"))
+        {
+            return new Session(StateId.VISITOR_LOGGED_IN, visitor.getID());
+        }
+        return null;
+    }
+}
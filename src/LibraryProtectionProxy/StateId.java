@@ -0,0 +1,15 @@
+package LibraryProtectionProxy;
+
+/**
+ * The states a client can be in, as far as the protection proxy is concerned. A client without a session is
+ * disconnected.
+ *
+ * @author Nikolas Tilley
+ */
+enum StateId
+{
+    DISCONNECTED,
+    LOGGED_OUT,
+    VISITOR_LOGGED_IN,
+    EMPLOYEE_LOGGED_IN
+}
@@ -1,9 +1,9 @@
 package LibraryProtectionProxy;
 
 import Library.Library;
-import Visitors.Visitor;
 
 import java.util.ArrayList;
+import java.util.Map;
 
 /**
  * Protection Proxy state for when client is connected, and the user is logged in
@@ -26,10 +26,30 @@ public class VisitorLoggedInState implements LibraryProtectionProxyState
 {
 
     private Library library;
+    private Map<Long, Session> sessions;
 
-    public VisitorLoggedInState(Library library)
+    /**
+     * Creates the state for logged in visitors.
+     *
+     * @param library - The library commands are handed to.
+     * @param sessions - The proxy's sessions, by client ID, which hold the visitor logged in on each client.
+     */
+    public VisitorLoggedInState(Library library, Map<Long, Session> sessions)
     {
         this.library = library;
+        this.sessions = sessions;
+    }
+
+    /**
+     * Gets the visitor ID of the visitor logged in on a client.
+     *
+     * @param clientID - The client.
+     * @return The visitor ID, or null if the client has no session.
+     */
+    private Long loggedInID(Long clientID)
+    {
+        Session session = sessions.get(clientID);
+        return session == null ? null : session.visitorID;
     }
 
     // info,
@@ -51,10 +71,10 @@ public class VisitorLoggedInState implements LibraryProtectionProxyState
     // Borrow book
     public void borrowBook(Long clientID, ArrayList<String> bookID,Long visitorID)
     {
-        Visitor visitor = library.getClient(clientID).getVisitor();
-        if (visitor != null)
+        Long loggedInID = loggedInID(clientID);
+        if (loggedInID != null)
         {
-            if (visitor.getID().compareTo(visitorID) == 0)
+            if (loggedInID.equals(visitorID))
                 library.borrowBook(clientID, bookID, visitorID);
             else
             {
@@ -111,10 +131,10 @@ public class VisitorLoggedInState implements LibraryProtectionProxyState
     // Begin Visit
     public void beginVisit(Long clientID, Long visitorID)
     {
-        Visitor visitor = library.getClient(clientID).getVisitor();
-        if (visitor != null)
+        Long loggedInID = loggedInID(clientID);
+        if (loggedInID != null)
         {
-            if (visitor.getID().compareTo(visitorID) == 0)
+            if (loggedInID.equals(visitorID))
                 library.beginVisit(clientID, visitorID);
             else
             {
@@ -133,10 +153,10 @@ public class VisitorLoggedInState implements LibraryProtectionProxyState
     public void endVisit(Long clientID, Long visitorID)
     {
 
-        Visitor visitor = library.getClient(clientID).getVisitor();
-        if (visitor != null)
+        Long loggedInID = loggedInID(clientID);
+        if (loggedInID != null)
         {
-            if (visitor.getID().compareTo(visitorID) == 0)
+            if (loggedInID.equals(visitorID))
                 library.endVisit(clientID, visitorID);
             else
             {
@@ -155,10 +175,10 @@ public class VisitorLoggedInState implements LibraryProtectionProxyState
     // Find Borrowed Books
     public void getVisitorCheckedOutBooks(Long clientID, Long visitorID)
     {
-        Visitor visitor = library.getClient(clientID).getVisitor();
-        if (visitor != null)
+        Long loggedInID = loggedInID(clientID);
+        if (loggedInID != null)
         {
-            if (visitor.getID().compareTo(visitorID) == 0)
+            if (loggedInID.equals(visitorID))
                 library.getVisitorCheckedOutBooks(clientID, visitorID);
             else
             {
@@ -176,10 +196,10 @@ public class VisitorLoggedInState implements LibraryProtectionProxyState
     // Pay fine
     public void payFine(Long clientID, Long visitorID, int amount)
     {
-        Visitor visitor = library.getClient(clientID).getVisitor();
-        if (visitor != null)
+        Long loggedInID = loggedInID(clientID);
+        if (loggedInID != null)
         {
-            if (visitor.getID().compareTo(visitorID) == 0)
+            if (loggedInID.equals(visitorID))
                 library.payFine(clientID, visitorID, amount);
             else
             {
@@ -233,10 +253,10 @@ public class VisitorLoggedInState implements LibraryProtectionProxyState
     // Return book
     public void returnBooks(Long clientID, Long visitorID, ArrayList<String> isbns)
     {
-        Visitor visitor = library.getClient(clientID).getVisitor();
-        if (visitor != null)
+        Long loggedInID = loggedInID(clientID);
+        if (loggedInID != null)
         {
-            if (visitor.getID().compareTo(visitorID) == 0)
+            if (loggedInID.equals(visitorID))
                 library.returnBooks(clientID, visitorID, isbns);
             else
             {
@@ -1,7 +1,6 @@
 package UIS;
 import LBMSCommands.*;
 import LibraryProtectionProxy.LibraryProtectionProxy;
-import java.util.Arrays;
 import java.util.ArrayList;
 
 /**
@@ -18,6 +17,18 @@ public class CommandParser
     private LibraryProtectionProxy proxy;
     private boolean execute;
 
+    /**
+     * Tokenizer reused for every command this parser sees.
+     */
+    private CommandTokens tokens;
+
+    /**
+     * Every command keyword, matched against the input without copying it.
+     */
+    private static final String[] COMMANDS = {"advance", "arrive", "borrow", "borrowed", "buy", "connect", "create",
+            "datetime", "depart", "disconnect", "info", "login", "logout", "pay", "register", "report", "return",
+            "search", "shutdown", "service", "undo", "redo"};
+
     /**
      * Creates a new CommandParser to be used with the parsing of user entered commands.
      *
@@ -29,69 +40,87 @@ public class CommandParser
         undoStack = new ArrayList<>();
         redoStack = new ArrayList<>();
         this.proxy = proxy;
+        this.tokens = new CommandTokens();
         execute = false;
 
     }
 
     /**
-     * Parses the command entered by the user.
+     * Parses the command entered by the user. Input holding more than one ;-terminated command is run as a batch: the
+     * commands are run in order and their responses are delivered together in one block.
      *
      * @param s - The command that was entered by the user.
      */
     public void parseCommand(String s)
     {
-        ArrayList<String> args = new ArrayList<>();
-
-        String arg = "";
-
-        boolean parseLiteral = false;
-        for (char c : s.toCharArray())
+        int clientIDEnd = s.indexOf(',');
+        int end = this.tokens.parse(s, -1, 0);
+        if (clientIDEnd < 0 || !this.tokens.isTerminated() || !hasMoreCommands(s, end))
         {
-            if ((c == '{' || c == '\"') && !parseLiteral)
-            {
-                parseLiteral = true;
-                continue; // Skip { and "
-            }
-            else if ((c == '}' || c == '\"') && parseLiteral)
-            {
-                parseLiteral = false;
-                continue; // Skip } and "
-            }
+            this.runCommand();
+            return;
+        }
 
-            if (c == ',' && !parseLiteral)
-            {
-                args.add(arg);
-                arg = "";
-            }
-            else if (c == ';' && !parseLiteral)
+        Long clientID = this.tokens.getLong(0);
+        proxy.beginBatch(clientID);
+        try
+        {
+            this.runCommand();
+            while (hasMoreCommands(s, end))
             {
-                args.add(arg);
-                arg = "";
-                break;
+                end = this.tokens.parse(s, clientIDEnd, skipWhitespace(s, end));
+                this.runCommand();
             }
-            else
-                arg += c;
         }
+        finally
+        {
+            proxy.endBatch(clientID);
+        }
+    }
 
-
-        if (args.size() >= 2)
+    /**
+     * Creates and executes the command held in the tokenizer.
+     */
+    private void runCommand()
+    {
+        if (tokens.size() >= 2)
         {
-            String cmd = args.get(1);
-            this.createCommand(cmd,args);
-            if (s.endsWith(";"))
+            String cmd = tokens.match(1, COMMANDS);
+            this.createCommand(cmd, tokens);
+            if (tokens.isTerminated())
             {
                 this.executeAllCommands();
             }
             else
-                proxy.forwardResponse(Long.parseLong(args.get(0)), args.get(0) + ",partial-request;");//Partial Request Error
+                proxy.forwardResponse(tokens.getLong(0), tokens.get(0) + ",partial-request;");//Partial Request Error
         }
         else
         {
-            if (s.endsWith(";"))
-                proxy.forwardResponse(Long.parseLong(args.get(0)), "Invalid argument length;");
+            if (tokens.isTerminated())
+                proxy.forwardResponse(tokens.getLong(0), "Invalid argument length;");
             else
-                proxy.forwardResponse(Long.parseLong(args.get(0)), args.get(0) + ",partial-request;");//Partial Request Error
+                proxy.forwardResponse(tokens.getLong(0), tokens.get(0) + ",partial-request;");//Partial Request Error
+        }
+    }
+
+    /**
+     * Checks whether anything other than whitespace follows an offset.
+     */
+    private static boolean hasMoreCommands(String s, int from)
+    {
+        return skipWhitespace(s, from) < s.length();
+    }
+
+    /**
+     * Finds the first offset at or after from that is not whitespace.
+     */
+    private static int skipWhitespace(String s, int from)
+    {
+        while (from < s.length() && Character.isWhitespace(s.charAt(from)))
+        {
+            from++;
         }
+        return from;
     }
 
     /**
@@ -101,23 +130,23 @@ public class CommandParser
      * @param args - The string of arguments that are to be used with the command.
      *
      */
-    public void createCommand(String cmd, ArrayList<String> args)
+    public void createCommand(String cmd, CommandTokens args)
     {
         LBMSCommand command;
-        Long clientID = Long.parseLong(args.get(0));
+        Long clientID = args.getLong(0);
 
         switch (cmd)
         {
             case "advance":
                 if (args.size() == 3)
                 {
-                    int days = Integer.parseInt(args.get(2));
+                    int days = args.getInt(2);
                     command = new AdvanceTime(proxy, clientID, days);
                 }
                 else if (args.size() == 4)
                 {
-                    int days = Integer.parseInt(args.get(2));
-                    int hours = Integer.parseInt(args.get(3));
+                    int days = args.getInt(2);
+                    int hours = args.getInt(3);
                     command = new AdvanceTime(proxy, clientID, days, hours);
                 }
                 else
@@ -142,7 +171,7 @@ public class CommandParser
                 }
                 else if (args.size() == 3)
                 {
-                    Long visitorID = Long.parseLong(args.get(2));
+                    Long visitorID = args.getLong(2);
                     command = new BeginVisit(proxy, clientID, visitorID);
                     this.addCommand(command);
                 }
@@ -158,15 +187,15 @@ public class CommandParser
                     if (proxy.getClientVisitorID(clientID) != null)
                     {
                         Long visitorID = proxy.getClientVisitorID(clientID);
-                        ArrayList<String> bookIDs = new ArrayList<>(Arrays.asList(args.get(2).split(",")));
+                        ArrayList<String> bookIDs = args.getList(2);
                         command = new BorrowBook(proxy, clientID, visitorID, bookIDs);
                         this.addCommand(command);
                     }
                 }
                 else if(args.size() == 4)
                 {
-                    ArrayList<String> bookIDs = new ArrayList<>(Arrays.asList(args.get(2).split(",")));
-                    Long visitorID = Long.parseLong(args.get(3));
+                    ArrayList<String> bookIDs = args.getList(2);
+                    Long visitorID = args.getLong(3);
                     command = new BorrowBook(proxy, clientID, visitorID, bookIDs);
                     this.addCommand(command);
                 }
@@ -188,7 +217,7 @@ public class CommandParser
                 }
                 else if (args.size() == 3)
                 {
-                    Long visitorID = Long.parseLong(args.get(2));
+                    Long visitorID = args.getLong(2);
                     command = new FindBorrowed(proxy, clientID, visitorID);
                     this.addCommand(command);
                 }
@@ -201,12 +230,12 @@ public class CommandParser
             case "buy":
                 if (args.size() >= 4)
                 {
-                    int amount = Integer.parseInt(args.get(2));
+                    int amount = args.getInt(2);
                     ArrayList<Integer> ids = new ArrayList<>();
 
                     for(int i = 3; i < args.size(); i++)
                     {
-                        ids.add(Integer.parseInt(args.get(i)));
+                        ids.add(args.getInt(i));
                     }
                     command = new PurchaseBook(proxy, clientID, amount, ids);
                     this.addCommand(command);
@@ -235,7 +264,7 @@ public class CommandParser
                     String username = args.get(2);
                     String password = args.get(3);
                     String role = args.get(4);
-                    Long visitorID = Long.parseLong(args.get(5));
+                    Long visitorID = args.getLong(5);
 
                     command = new CreateAccount(proxy, clientID, username, password, role, visitorID);
                     this.addCommand(command);
@@ -270,7 +299,7 @@ public class CommandParser
                 }
                 else if (args.size() == 3)
                 {
-                    Long visitorID = Long.parseLong(args.get(2));
+                    Long visitorID = args.getLong(2);
                     command = new EndVisit(proxy, clientID, visitorID);
 
                     this.addCommand(command);
@@ -297,14 +326,14 @@ public class CommandParser
                 if (args.size() == 4)
                 {
                     String title = args.get(2);
-                    ArrayList<String> authors = new ArrayList<>(Arrays.asList(args.get(3).split(",")));
+                    ArrayList<String> authors = args.getList(3);
                     command = new BookSearch(proxy, clientID, title, authors);
                     this.addCommand(command);
                 }
                 else if (args.size() == 5)
                 {
                     String title = args.get(2);
-                    ArrayList<String> authors = new ArrayList<>(Arrays.asList(args.get(3).split(",")));
+                    ArrayList<String> authors = args.getList(3);
                     String isbn = args.get(4);
                     command = new BookSearch(proxy, clientID, title, authors, isbn);
 
@@ -313,7 +342,7 @@ public class CommandParser
                 else if(args.size() == 6)
                 {
                     String title = args.get(2);
-                    ArrayList<String> authors = new ArrayList<>(Arrays.asList(args.get(3).split(",")));
+                    ArrayList<String> authors = args.getList(3);
                     String isbn = args.get(4);
                     String publisher = args.get(5);
                     command = new BookSearch(proxy, clientID, title, authors, isbn, publisher);
@@ -323,7 +352,7 @@ public class CommandParser
                 else if(args.size() == 7)
                 {
                     String title = args.get(2);
-                    ArrayList<String> authors = new ArrayList<>(Arrays.asList(args.get(3).split(",")));
+                    ArrayList<String> authors = args.getList(3);
                     String isbn = args.get(4);
                     String publisher = args.get(5);
                     String sortOrder = args.get(6);
@@ -370,15 +399,15 @@ public class CommandParser
                     if (proxy.getClientVisitorID(clientID) != null)
                     {
                         Long visitorID = proxy.getClientVisitorID(clientID);
-                        int amount = Integer.parseInt(args.get(3));
+                        int amount = args.getInt(3);
                         command = new PayFine(proxy, clientID, visitorID, amount);
                         this.addCommand(command);
                     }
                 }
                 else if (args.size() == 4)
                 {
-                    int amount = Integer.parseInt(args.get(2));
-                    Long visitorID = Long.parseLong(args.get(3));
+                    int amount = args.getInt(2);
+                    Long visitorID = args.getLong(3);
                     command = new PayFine(proxy, clientID, visitorID, amount);
                     this.addCommand(command);
                 }
@@ -413,7 +442,7 @@ public class CommandParser
                 }
                 else if(args.size() == 3)
                 {
-                    int days = Integer.parseInt(args.get(2));
+                    int days = args.getInt(2);
                     command = new GenerateReport(proxy, clientID, days);
                     this.addCommand(command);
                 }
@@ -426,7 +455,7 @@ public class CommandParser
             case "return":
                 if(args.size() >= 4)
                 {
-                    Long visitorID = Long.parseLong(args.get(2));
+                    Long visitorID = args.getLong(2);
                     ArrayList<String> ids = new ArrayList<>();
 
                     for(int i = 3; i < args.size(); i++)
@@ -453,7 +482,7 @@ public class CommandParser
                 else if (args.size() == 5)
                 {
                     String title = args.get(2);
-                    ArrayList<String> authors = new ArrayList<>(Arrays.asList(args.get(3).split(",")));
+                    ArrayList<String> authors = args.getList(3);
                     String isbn = args.get(4);
                     command = new BookStoreSearch(proxy, clientID, title, authors, isbn);
                     this.addCommand(command);
@@ -461,7 +490,7 @@ public class CommandParser
                 else if (args.size() == 6)
                 {
                     String title = args.get(2);
-                    ArrayList<String> authors = new ArrayList<>(Arrays.asList(args.get(3).split(",")));
+                    ArrayList<String> authors = args.getList(3);
                     String isbn = args.get(4);
                     String publisher = args.get(5);
                     command = new BookStoreSearch(proxy, clientID, title, authors, isbn, publisher);
@@ -470,7 +499,7 @@ public class CommandParser
                 else if(args.size() == 7)
                 {
                     String title = args.get(2);
-                    ArrayList<String> authors = new ArrayList<>(Arrays.asList(args.get(3).split(",")));
+                    ArrayList<String> authors = args.getList(3);
                     String isbn = args.get(4);
                     String publisher = args.get(5);
                     String sortOrder = args.get(6);
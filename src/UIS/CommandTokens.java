@@ -0,0 +1,314 @@
+package UIS;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * A single-pass tokenizer for the LBMS command protocol. Arguments are recorded as offsets into the original input
+ * rather than copied out, and are only turned into Strings, numbers or lists when a command asks for them. One
+ * instance is reused for every command a parser sees, so tokenizing allocates nothing once its offset arrays have grown
+ * to fit the longest command.
+ *
+ * Arguments are separated by commas and a command ends at a semicolon. Text inside {} or quotes is a literal: its
+ * commas and semicolons belong to the argument, and the braces and quotes themselves are not part of its value.
+ *
+ * @author Nikolas Tilley
+ */
+public class CommandTokens
+{
+    private CharSequence input;
+    private int[] starts;
+    private int[] ends;
+    private boolean[] literals;
+    private int size;
+    private boolean terminated;
+    private StringBuilder scratch;
+
+    /**
+     * Creates an empty tokenizer.
+     */
+    public CommandTokens()
+    {
+        this.starts = new int[16];
+        this.ends = new int[16];
+        this.literals = new boolean[16];
+        this.scratch = new StringBuilder();
+    }
+
+    /**
+     * Tokenizes one command. The first argument is the client ID, taken from the start of the input up to
+     * clientIDEnd, and the rest are read from the command starting at from. This lets every command in a batch share
+     * the client ID written once at the front of the input.
+     *
+     * @param input - The input holding the command.
+     * @param clientIDEnd - The end of the client ID at the start of the input, or -1 to read every argument from the
+     *                    command.
+     * @param from - The offset the command starts at.
+     * @return The offset just past the end of the command.
+     */
+    public int parse(CharSequence input, int clientIDEnd, int from)
+    {
+        this.input = input;
+        this.size = 0;
+        this.terminated = false;
+
+        if (clientIDEnd >= 0)
+        {
+            this.add(0, clientIDEnd, false);
+        }
+
+        boolean parseLiteral = false;
+        boolean hasLiteral = false;
+        int start = from;
+        int i = from;
+        int length = input.length();
+
+        for (; i < length; i++)
+        {
+            char c = input.charAt(i);
+            if ((c == '{' || c == '\"') && !parseLiteral)
+            {
+                parseLiteral = true;
+                hasLiteral = true;
+            }
+            else if ((c == '}' || c == '\"') && parseLiteral)
+            {
+                parseLiteral = false;
+            }
+            else if (c == ',' && !parseLiteral)
+            {
+                this.add(start, i, hasLiteral);
+                start = i + 1;
+                hasLiteral = false;
+            }
+            else if (c == ';' && !parseLiteral)
+            {
+                this.add(start, i, hasLiteral);
+                this.terminated = true;
+                return i + 1;
+            }
+        }
+
+        // An argument that is not followed by a comma or semicolon is incomplete and is left out
+        return i;
+    }
+
+    /**
+     * Gets the number of arguments in the command, including the client ID.
+     *
+     * @return The number of arguments.
+     */
+    public int size()
+    {
+        return this.size;
+    }
+
+    /**
+     * Checks whether the command ended with a semicolon.
+     *
+     * @return False if the input ran out before the command was finished.
+     */
+    public boolean isTerminated()
+    {
+        return this.terminated;
+    }
+
+    /**
+     * Gets an argument as a String.
+     *
+     * @param index - The index of the argument.
+     * @return The argument, without any braces or quotes.
+     */
+    public String get(int index)
+    {
+        this.check(index);
+        if (!this.literals[index])
+        {
+            return this.input.subSequence(this.starts[index], this.ends[index]).toString();
+        }
+
+        this.scratch.setLength(0);
+        boolean parseLiteral = false;
+        for (int i = this.starts[index]; i < this.ends[index]; i++)
+        {
+            char c = this.input.charAt(i);
+            if ((c == '{' || c == '\"') && !parseLiteral)
+            {
+                parseLiteral = true;
+            }
+            else if ((c == '}' || c == '\"') && parseLiteral)
+            {
+                parseLiteral = false;
+            }
+            else
+            {
+                this.scratch.append(c);
+            }
+        }
+        return this.scratch.toString();
+    }
+
+    /**
+     * Gets an argument as an int, read straight from the input.
+     *
+     * @param index - The index of the argument.
+     * @return The argument's value.
+     * @throws NumberFormatException if the argument is not an int.
+     */
+    public int getInt(int index)
+    {
+        this.check(index);
+        if (this.literals[index])
+        {
+            return Integer.parseInt(this.get(index));
+        }
+        return Integer.parseInt(this.input, this.starts[index], this.ends[index], 10);
+    }
+
+    /**
+     * Gets an argument as a Long, read straight from the input.
+     *
+     * @param index - The index of the argument.
+     * @return The argument's value.
+     * @throws NumberFormatException if the argument is not a long.
+     */
+    public Long getLong(int index)
+    {
+        this.check(index);
+        if (this.literals[index])
+        {
+            return Long.parseLong(this.get(index));
+        }
+        return Long.parseLong(this.input, this.starts[index], this.ends[index], 10);
+    }
+
+    /**
+     * Gets an argument holding a comma separated list, such as {a,b,c}, as its items. Trailing empty items are dropped,
+     * the same as String.split(",").
+     *
+     * @param index - The index of the argument.
+     * @return The items of the list.
+     */
+    public ArrayList<String> getList(int index)
+    {
+        this.check(index);
+        ArrayList<String> items = new ArrayList<>();
+        this.scratch.setLength(0);
+
+        boolean parseLiteral = false;
+        boolean empty = true;
+        int kept = 0;
+        for (int i = this.starts[index]; i < this.ends[index]; i++)
+        {
+            char c = this.input.charAt(i);
+            if ((c == '{' || c == '\"') && !parseLiteral)
+            {
+                parseLiteral = true;
+            }
+            else if ((c == '}' || c == '\"') && parseLiteral)
+            {
+                parseLiteral = false;
+            }
+            else if (c == ',')
+            {
+                items.add(this.scratch.toString());
+                if (this.scratch.length() > 0)
+                {
+                    kept = items.size();
+                }
+                this.scratch.setLength(0);
+                empty = false;
+            }
+            else
+            {
+                this.scratch.append(c);
+                empty = false;
+            }
+        }
+        items.add(this.scratch.toString());
+        if (this.scratch.length() > 0)
+        {
+            kept = items.size();
+        }
+
+        if (empty)
+        {
+            // Like split(), an empty list holds one empty item
+            return items;
+        }
+        while (items.size() > kept)
+        {
+            items.remove(items.size() - 1);
+        }
+        return items;
+    }
+
+    /**
+     * Finds which of a set of words an argument is, without copying the argument.
+     *
+     * @param index - The index of the argument.
+     * @param words - The words to look for.
+     * @return The matching word from words, or the argument as a String if it matches none of them.
+     */
+    public String match(int index, String[] words)
+    {
+        this.check(index);
+        if (!this.literals[index])
+        {
+            int start = this.starts[index];
+            int length = this.ends[index] - start;
+            for (String word : words)
+            {
+                if (word.length() == length && this.regionEquals(start, word))
+                {
+                    return word;
+                }
+            }
+        }
+        return this.get(index);
+    }
+
+    /**
+     * Records an argument.
+     */
+    private void add(int start, int end, boolean literal)
+    {
+        if (this.size == this.starts.length)
+        {
+            int capacity = this.size * 2;
+            this.starts = Arrays.copyOf(this.starts, capacity);
+            this.ends = Arrays.copyOf(this.ends, capacity);
+            this.literals = Arrays.copyOf(this.literals, capacity);
+        }
+        this.starts[this.size] = start;
+        this.ends[this.size] = end;
+        this.literals[this.size] = literal;
+        this.size++;
+    }
+
+    /**
+     * Compares the input at an offset with a word.
+     */
+    private boolean regionEquals(int start, String word)
+    {
+        for (int i = 0; i < word.length(); i++)
+        {
+            if (this.input.charAt(start + i) != word.charAt(i))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks an argument index, failing the same way a list would.
+     */
+    private void check(int index)
+    {
+        if (index < 0 || index >= this.size)
+        {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + this.size);
+        }
+    }
+}
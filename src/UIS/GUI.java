@@ -1,6 +1,7 @@
 package UIS;
 
 import Library.Library;
+import LibraryProtectionProxy.LibraryProtectionProxy;
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.*;
@@ -17,6 +18,7 @@ public class GUI extends JPanel
     private ArrayList<GUICommandDisplay> commandDisplays;
     private JTabbedPane tabbedPane;
     private Library lib;
+    private LibraryProtectionProxy proxy; // Shared by every tab, it keeps the state of each client
 
     /**
      * Constructs a new GUI object.
@@ -29,9 +31,10 @@ public class GUI extends JPanel
         this.clientIDCounter = 1;
         this.commandDisplays = new ArrayList<>();
         this.lib = new Library();
+        this.proxy = new LibraryProtectionProxy(lib);
         tabbedPane = new JTabbedPane();
-        GUICommandDisplay initDisplay = new GUICommandDisplay(lib, tabbedPane, Long.valueOf(clientIDCounter));
-        lib.addObserver(initDisplay);
+        GUICommandDisplay initDisplay = new GUICommandDisplay(lib, proxy, tabbedPane, Long.valueOf(clientIDCounter));
+        lib.addResponseListener(initDisplay.getClientID(), initDisplay);
         tabbedPane.add(initDisplay.getCommandDisplay(), "Client " + clientIDCounter);
         clientIDCounter++;
         JButton newClientButton = new NewClient();
@@ -64,8 +67,8 @@ public class GUI extends JPanel
          */
         public void actionPerformed(ActionEvent e)
         {
-            GUICommandDisplay newDisplay = new GUICommandDisplay(lib, tabbedPane, Long.valueOf(clientIDCounter));
-            lib.addObserver(newDisplay);
+            GUICommandDisplay newDisplay = new GUICommandDisplay(lib, proxy, tabbedPane, Long.valueOf(clientIDCounter));
+            lib.addResponseListener(newDisplay.getClientID(), newDisplay);
             tabbedPane.add(newDisplay.getCommandDisplay(), "Client " + clientIDCounter, tabbedPane.getTabCount()-1);
             commandDisplays.add(newDisplay);
             clientIDCounter++;
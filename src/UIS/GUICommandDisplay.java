@@ -1,20 +1,19 @@
 package UIS;
 
 import Library.Library;
+import Library.ResponseListener;
 import LibraryProtectionProxy.LibraryProtectionProxy;
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
-import java.util.Observable;
-import java.util.Observer;
 
 /**
  * Description
  *
  * @author Jake Bashaw
  */
-public class GUICommandDisplay extends Component implements ActionListener, Observer
+public class GUICommandDisplay extends Component implements ActionListener, ResponseListener
 {
     private Long clientID;
     private Library library;
@@ -24,19 +23,20 @@ public class GUICommandDisplay extends Component implements ActionListener, Obse
     private JTabbedPane tabbedPane;
     private JPanel commandDisplay;
     private CommandParser parser;
-    private LibraryProtectionProxy proxy; // need to do this to implement responses when not connected
+    private LibraryProtectionProxy proxy;
     private boolean checkChange;
 
     /**
      * The class that holds all of the GUI elements that are needed to display LBMS to a client
      *
      * @param library - the library they are interacting with
+     * @param proxy - the protection proxy shared by every client of the library
      * @param tabbedPane - the tabbedPane that shows all of the open, active clients
      * @param clientID - the clientID associated with this GUICommandDisplay
      */
-    public GUICommandDisplay(Library library, JTabbedPane tabbedPane, Long clientID)
+    public GUICommandDisplay(Library library, LibraryProtectionProxy proxy, JTabbedPane tabbedPane, Long clientID)
     {
-        this.proxy =  new LibraryProtectionProxy(library); // need to do this to implement responses when not connected
+        this.proxy = proxy;
         this.parser = new CommandParser(this.proxy);
 
         this.clientID = clientID;
@@ -77,14 +77,14 @@ public class GUICommandDisplay extends Component implements ActionListener, Obse
 
         // Hacky way to deal with not being able to update UI if not connected
         boolean wasConnected = true;
-        if (!proxy.isConnected())
+        if (!proxy.isConnected(clientID))
             wasConnected = false;
 
         parser.parseCommand(clientID + "," + command);
 
-        if(!proxy.isConnected() && !wasConnected) // This is really hacky and does not fulfil requirements totally
+        if(!proxy.isConnected(clientID) && !wasConnected) // This is really hacky and does not fulfil requirements totally
             tArea.append("invalid-client-id,client-not-connected;\n");
-        if(!proxy.isConnected() && wasConnected)
+        if(!proxy.isConnected(clientID) && wasConnected)
             tArea.append(clientID + ",disconnect;" + "\n");
         tField.setText("");
 
@@ -117,6 +117,7 @@ public class GUICommandDisplay extends Component implements ActionListener, Obse
         {
             proxy.logout(clientID);
             proxy.clientDisconnect(clientID);
+            library.removeResponseListener(clientID);
             int i = tabbedPane.indexOfTab("Client " + clientID);
             tabbedPane.remove(i);
         }
@@ -143,11 +144,11 @@ public class GUICommandDisplay extends Component implements ActionListener, Obse
     }
 
     @Override
-    public void update(Observable observable, Object o)
+    public void responseReady(Long clientID, String response)
     {
         if(checkChange)
         {
-            tArea.append(this.library.getClientStatus(clientID) + "\n");
+            tArea.append(response + "\n");
             checkChange = false;
         }
     }
@@ -0,0 +1,413 @@
+package UIS;
+
+import Library.Library;
+import Library.ResponseListener;
+import LibraryProtectionProxy.LibraryProtectionProxy;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A TCP front-end for the LBMS command protocol. Every connection is a terminal, just like a PTUI: it is given its own
+ * client ID, sends one command per line without the client ID, and receives every response for its client ID back as
+ * a line. All connections share one Library, and one protection proxy that keeps the state of each client.
+ *
+ * A single selector thread does all socket reads and writes. Complete lines are handed to a pool of worker threads,
+ * which run a connection's commands one at a time and in the order they arrived, so a slow command on one terminal
+ * never holds up the others.
+ *
+ * @author Kyle Kaniecki
+ */
+public class LBMSServer
+{
+    /**
+     * The port the server listens on when none is given.
+     */
+    public static final int DEFAULT_PORT = 7070;
+
+    /**
+     * The longest command line accepted before a connection is dropped.
+     */
+    private static final int MAX_LINE = 64 * 1024;
+
+    private Library library;
+    private LibraryProtectionProxy proxy;
+    private Selector selector;
+    private ServerSocketChannel serverChannel;
+    private ExecutorService workers;
+    private AtomicLong clientIDCounter;
+
+    /**
+     * Creates a server for a library, listening on the given port.
+     *
+     * @param library - The library every connection shares.
+     * @param port - The port to listen on.
+     */
+    public LBMSServer(Library library, int port) throws IOException
+    {
+        this.library = library;
+        this.proxy = new LibraryProtectionProxy(library);
+        this.clientIDCounter = new AtomicLong(1);
+        this.workers = Executors.newFixedThreadPool(Math.max(4, Runtime.getRuntime().availableProcessors() * 2));
+
+        this.selector = Selector.open();
+        this.serverChannel = ServerSocketChannel.open();
+        this.serverChannel.bind(new InetSocketAddress(port));
+        this.serverChannel.configureBlocking(false);
+        this.serverChannel.register(this.selector, SelectionKey.OP_ACCEPT);
+    }
+
+    /**
+     * Gets the port the server is listening on.
+     *
+     * @return The bound port.
+     */
+    public int getPort() throws IOException
+    {
+        return ((InetSocketAddress) this.serverChannel.getLocalAddress()).getPort();
+    }
+
+    /**
+     * Runs the selector loop on the calling thread until the server is closed.
+     */
+    public void serve() throws IOException
+    {
+        while (this.selector.isOpen())
+        {
+            this.selector.select();
+            if (!this.selector.isOpen())
+            {
+                break;
+            }
+
+            Iterator<SelectionKey> keys = this.selector.selectedKeys().iterator();
+            while (keys.hasNext())
+            {
+                SelectionKey key = keys.next();
+                keys.remove();
+
+                try
+                {
+                    if (!key.isValid())
+                    {
+                        continue;
+                    }
+                    if (key.isAcceptable())
+                    {
+                        this.accept();
+                    }
+                    else
+                    {
+                        Session session = (Session) key.attachment();
+                        if (key.isReadable())
+                        {
+                            session.read();
+                        }
+                        if (key.isValid() && key.isWritable())
+                        {
+                            session.write();
+                        }
+                    }
+                }
+                catch (IOException io)
+                {
+                    if (key.attachment() instanceof Session)
+                    {
+                        ((Session) key.attachment()).close();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Stops accepting connections and stops the worker threads. Open connections are dropped.
+     */
+    public void close() throws IOException
+    {
+        this.workers.shutdown();
+        this.serverChannel.close();
+        this.selector.close();
+    }
+
+    /**
+     * Accepts a waiting connection and starts a session for it.
+     */
+    private void accept() throws IOException
+    {
+        SocketChannel channel = this.serverChannel.accept();
+        if (channel == null)
+        {
+            return;
+        }
+
+        channel.configureBlocking(false);
+        SelectionKey key = channel.register(this.selector, SelectionKey.OP_READ);
+        key.attach(new Session(key, this.clientIDCounter.getAndIncrement()));
+    }
+
+    /**
+     * A single terminal connected to the server.
+     */
+    private class Session implements ResponseListener
+    {
+        private SelectionKey key;
+        private SocketChannel channel;
+        private Long clientID;
+        private CommandParser parser;
+
+        private ByteBuffer readBuffer;
+        private CharBuffer decoded;
+        private CharsetDecoder decoder;
+        private StringBuilder line;
+
+        private ConcurrentLinkedQueue<String> commands;
+        private AtomicBoolean running;
+        private ConcurrentLinkedQueue<ByteBuffer> output;
+        private volatile boolean closed;
+
+        /**
+         * Creates a session for a newly accepted connection.
+         *
+         * @param key - The connection's selection key.
+         * @param clientID - The client ID assigned to the connection.
+         */
+        public Session(SelectionKey key, Long clientID)
+        {
+            this.key = key;
+            this.channel = (SocketChannel) key.channel();
+            this.clientID = clientID;
+            this.parser = new CommandParser(proxy);
+
+            this.readBuffer = ByteBuffer.allocate(8 * 1024);
+            this.decoded = CharBuffer.allocate(8 * 1024);
+            this.decoder = StandardCharsets.UTF_8.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            this.line = new StringBuilder();
+
+            this.commands = new ConcurrentLinkedQueue<>();
+            this.running = new AtomicBoolean(false);
+            this.output = new ConcurrentLinkedQueue<>();
+
+            library.addResponseListener(clientID, this);
+        }
+
+        /**
+         * Reads what the connection has sent and queues every complete line as a command. Runs on the selector thread.
+         */
+        public void read() throws IOException
+        {
+            int n = this.channel.read(this.readBuffer);
+            if (n < 0)
+            {
+                this.close();
+                return;
+            }
+
+            this.readBuffer.flip();
+            this.decoder.decode(this.readBuffer, this.decoded, false);
+            this.readBuffer.compact();
+
+            this.decoded.flip();
+            boolean queued = false;
+            while (this.decoded.hasRemaining())
+            {
+                char c = this.decoded.get();
+                if (c == '\n')
+                {
+                    int end = this.line.length();
+                    if (end > 0 && this.line.charAt(end - 1) == '\r')
+                    {
+                        end--;
+                    }
+                    if (end > 0)
+                    {
+                        this.commands.add(this.line.substring(0, end));
+                        queued = true;
+                    }
+                    this.line.setLength(0);
+                }
+                else if (this.line.length() >= MAX_LINE)
+                {
+                    throw new IOException("Command too long");
+                }
+                else
+                {
+                    this.line.append(c);
+                }
+            }
+            this.decoded.clear();
+
+            if (queued)
+            {
+                this.schedule();
+            }
+        }
+
+        /**
+         * Writes as much queued output as the connection will take. Runs on the selector thread.
+         */
+        public void write() throws IOException
+        {
+            ByteBuffer buffer;
+            while ((buffer = this.output.peek()) != null)
+            {
+                this.channel.write(buffer);
+                if (buffer.hasRemaining())
+                {
+                    return;
+                }
+                this.output.poll();
+            }
+
+            this.key.interestOps(SelectionKey.OP_READ);
+
+            // A response may have been queued after the queue was found empty
+            if (!this.output.isEmpty())
+            {
+                this.key.interestOpsOr(SelectionKey.OP_WRITE);
+            }
+        }
+
+        /**
+         * Queues a response for the connection. May be called from any thread.
+         */
+        @Override
+        public void responseReady(Long clientID, String response)
+        {
+            this.send(response);
+        }
+
+        /**
+         * Ends the session, logging the client out and disconnecting it from the library.
+         */
+        public void close()
+        {
+            if (this.closed)
+            {
+                return;
+            }
+            this.closed = true;
+
+            library.removeResponseListener(this.clientID);
+            this.key.cancel();
+            try
+            {
+                this.channel.close();
+            }
+            catch (IOException io)
+            {
+                // The connection is already gone
+            }
+
+            // The client is disconnected on the worker pool, after any commands still queued for it
+            this.schedule();
+        }
+
+        /**
+         * Queues a line of output and asks the selector thread to write it.
+         */
+        private void send(String response)
+        {
+            if (this.closed)
+            {
+                return;
+            }
+
+            this.output.add(StandardCharsets.UTF_8.encode(response + "\n"));
+            try
+            {
+                this.key.interestOpsOr(SelectionKey.OP_WRITE);
+                selector.wakeup();
+            }
+            catch (RuntimeException e)
+            {
+                // The key was cancelled because the connection closed
+            }
+        }
+
+        /**
+         * Makes sure a worker is running this session's queued commands. Only one worker runs them at a time.
+         */
+        private void schedule()
+        {
+            if (this.running.compareAndSet(false, true))
+            {
+                workers.execute(this::runCommands);
+            }
+        }
+
+        /**
+         * Runs queued commands until there are none left. Runs on a worker thread.
+         */
+        private void runCommands()
+        {
+            String command;
+            while ((command = this.commands.poll()) != null)
+            {
+                // Same as the PTUI, the client learns it was disconnected from the proxy's state
+                boolean wasConnected = proxy.isConnected(this.clientID);
+                try
+                {
+                    this.parser.parseCommand(this.clientID + "," + command);
+                }
+                catch (RuntimeException e)
+                {
+                    this.send(this.clientID + ",invalid-request;");
+                }
+
+                if (!proxy.isConnected(this.clientID) && !wasConnected)
+                {
+                    this.send("invalid-client-id,client-not-connected;");
+                }
+                else if (!proxy.isConnected(this.clientID) && wasConnected)
+                {
+                    this.send(this.clientID + ",disconnect;");
+                }
+            }
+
+            // Same as closing a GUI tab, a dropped connection logs out and disconnects its client
+            if (this.closed && proxy.isConnected(this.clientID))
+            {
+                proxy.logout(this.clientID);
+                proxy.clientDisconnect(this.clientID);
+            }
+
+            this.running.set(false);
+
+            // A command may have been queued after the queue was found empty, or the connection closed after it was
+            // checked above while this worker still held the running flag
+            if (!this.commands.isEmpty() || (this.closed && proxy.isConnected(this.clientID)))
+            {
+                this.schedule();
+            }
+        }
+    }
+
+    /**
+     * Main method for testing. Serves a library on the given port, or the default port.
+     */
+    public static void main(String[] args) throws IOException
+    {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        LBMSServer server = new LBMSServer(new Library(), port);
+        System.out.println("LBMS server listening on port " + server.getPort());
+        server.serve();
+    }
+}
@@ -1,14 +1,13 @@
 package UIS;
 
 import Library.Library;
+import Library.ResponseListener;
 import LibraryProtectionProxy.LibraryProtectionProxy;
 import LibraryProtectionProxy.LibrarySubject;
 
 import java.io.IOException;
 import java.io.BufferedReader;
 import java.io.InputStreamReader;
-import java.util.Observable;
-import java.util.Observer;
 
 /**
  * This class handles the input of user commands and represents the "view" of our LBMS application. The accepting and
@@ -17,7 +16,7 @@ import java.util.Observer;
  * @author Kyle Kaniecki
  * @author Tyler
  */
-public class PTUI implements Observer
+public class PTUI implements ResponseListener
 {
     private CommandParser commandparser;
     private BufferedReader reader;
@@ -32,8 +31,8 @@ public class PTUI implements Observer
     {
         this.reader = new BufferedReader(new InputStreamReader(System.in));
         this.lib = new Library();
-        this.lib.addObserver(this);
         this.clientID = Long.valueOf(657584);
+        this.lib.addResponseListener(this.clientID, this);
         this.proxy = new LibraryProtectionProxy(lib);
         this.commandparser = new CommandParser(proxy);
     }
@@ -52,12 +51,12 @@ public class PTUI implements Observer
 
             // Hacky way to deal with not being able to update UI if not connected
             boolean wasConnected = true;
-            if (!proxy.isConnected())
+            if (!proxy.isConnected(clientID))
                 wasConnected = false;
 
             commandparser.parseCommand(clientID + "," + command);
 
-            if(!proxy.isConnected() && wasConnected)
+            if(!proxy.isConnected(clientID) && wasConnected)
                 System.out.println(clientID + ",disconnect;" + "\n");
         }
         catch(IOException io)
@@ -67,12 +66,12 @@ public class PTUI implements Observer
     }
 
     /**
-     * Updates the status variable which displays command output from completed commands to the user.
+     * Displays command output from completed commands to the user.
      */
     @Override
-    public void update(Observable observable, Object o)
+    public void responseReady(Long clientID, String response)
     {
-        System.out.println(this.lib.getClientStatus(this.clientID));
+        System.out.println(response);
     }
 
     /**
@@ -1,7 +1,7 @@
 package Visitors;
 
 import Books.Book;
-import java.util.Calendar;
+import Library.TimeClock;
 
 /**
  * Provides a structure to persist data associated with books checked out by library visitors.
@@ -11,9 +11,9 @@ import java.util.Calendar;
 public class CheckOut implements java.io.Serializable
 {
     private Book book;
-    private Calendar borrowDate;
-    private Calendar dueDate;
-    private Calendar returnDate;
+    private long borrowDate;
+    private long dueDate;
+    private long returnDate;
 
     /**
      * Default constructor. Requires a book object to link the checkout to.
@@ -21,8 +21,9 @@ public class CheckOut implements java.io.Serializable
      * (i.e. two weeks after checkout).
      *
      * @param book - Book to which this checkout is associated
+     * @param borrowDate - When the book was checked out, in milliseconds since the epoch.
      */
-    public CheckOut(Book book, Calendar borrowDate)
+    public CheckOut(Book book, long borrowDate)
     {
         this.book = book;
         this.borrowDate = borrowDate;
@@ -31,18 +32,14 @@ public class CheckOut implements java.io.Serializable
         int daysUntilDue = 14;
 
         // Calculate the due date
-        Calendar calendar = Calendar.getInstance();
-        calendar.setTime(borrowDate.getTime());
-        calendar.add(Calendar.DAY_OF_YEAR, daysUntilDue);
-
-        this.dueDate = calendar;
-        this.returnDate = null;
+        this.dueDate = TimeClock.plusDays(borrowDate, daysUntilDue);
+        this.returnDate = TimeClock.NEVER;
     }
 
     /**
      * Sets the return date of the checkout.
      */
-    public void returnBook(Calendar returnDate)
+    public void returnBook(long returnDate)
     {
         this.returnDate = returnDate;
     }
@@ -62,7 +59,7 @@ public class CheckOut implements java.io.Serializable
      *
      * @return The date on which the book(s) were checked out.
      */
-    public Calendar getBorrowDate()
+    public long getBorrowDate()
     {
         return this.borrowDate;
     }
@@ -72,7 +69,7 @@ public class CheckOut implements java.io.Serializable
      *
      * @return The checked out book's due date.
      */
-    public Calendar getDueDate()
+    public long getDueDate()
     {
         return this.dueDate;
     }
@@ -82,7 +79,7 @@ public class CheckOut implements java.io.Serializable
      *
      * @return The checked out book's return date.
      */
-    public Calendar getReturnDate()
+    public long getReturnDate()
     {
         return this.returnDate;
     }
@@ -0,0 +1,215 @@
+package Visitors;
+
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
+/**
+ * A salted hash of an account's password. Passwords are hashed with PBKDF2, and the number of iterations it runs, its
+ * work factor, is stored with each hash so it can be raised later without breaking existing accounts. Hashes are
+ * compared in constant time.
+ *
+ * Credentials are stored as text in the form pbkdf2-sha256$iterations$salt$hash, with the salt and hash in Base64.
+ *
+ * @author Kyler Freas
+ */
+public final class Credential implements java.io.Serializable
+{
+    /**
+     * The work factor used when none has been set.
+     */
+    public static final int DEFAULT_WORK_FACTOR = 100_000;
+
+    private static final String ALGORITHM = "PBKDF2WithHmacSHA256";
+    private static final String PREFIX = "pbkdf2-sha256";
+    private static final int SALT_BYTES = 16;
+    private static final int HASH_BITS = 256;
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    // Work factor of newly hashed passwords
+    private static volatile int workFactor = DEFAULT_WORK_FACTOR;
+
+    // Checked against when a username does not exist, so that costs the same as a wrong password
+    private static volatile Credential missing;
+
+    private final int iterations;
+    private final byte[] salt;
+    private final byte[] hash;
+
+    private Credential(int iterations, byte[] salt, byte[] hash)
+    {
+        this.iterations = iterations;
+        this.salt = salt;
+        this.hash = hash;
+    }
+
+    /**
+     * Hashes a password with a new random salt at the current work factor.
+     *
+     * @param password - The password to hash.
+     * @return The credential for the password.
+     */
+    public static Credential create(String password)
+    {
+        byte[] salt = new byte[SALT_BYTES];
+        RANDOM.nextBytes(salt);
+        int iterations = workFactor;
+        return new Credential(iterations, salt, derive(password, salt, iterations));
+    }
+
+    /**
+     * Checks a password against the credential in constant time.
+     *
+     * @param password - The password to check.
+     * @return True if the password matches.
+     */
+    public boolean verify(String password)
+    {
+        return MessageDigest.isEqual(this.hash, derive(password, this.salt, this.iterations));
+    }
+
+    /**
+     * Does the same work as checking a password, for a username that does not exist, and always fails.
+     *
+     * @param password - The password that was given.
+     * @return False.
+     */
+    public static boolean verifyMissing(String password)
+    {
+        Credential credential = missing;
+        if (credential == null || credential.iterations != workFactor)
+        {
+            credential = create("");
+            missing = credential;
+        }
+        credential.verify(password);
+        return false;
+    }
+
+    /**
+     * Checks whether the credential was hashed at a lower work factor than the current one.
+     *
+     * @return True if the password should be hashed again the next time it is known.
+     */
+    public boolean needsRehash()
+    {
+        return this.iterations < workFactor;
+    }
+
+    /**
+     * Gets the work factor newly hashed passwords use.
+     *
+     * @return The number of PBKDF2 iterations.
+     */
+    public static int getWorkFactor()
+    {
+        return workFactor;
+    }
+
+    /**
+     * Sets the work factor newly hashed passwords use. Existing credentials keep their own until they are hashed again.
+     *
+     * @param iterations - The number of PBKDF2 iterations.
+     */
+    public static void setWorkFactor(int iterations)
+    {
+        if (iterations < 1)
+        {
+            throw new IllegalArgumentException("The work factor must be positive");
+        }
+        workFactor = iterations;
+    }
+
+    /**
+     * Encodes the credential as text for storage.
+     *
+     * @return The encoded credential.
+     */
+    public String encode()
+    {
+        Base64.Encoder base64 = Base64.getEncoder();
+        return PREFIX + "$" + this.iterations + "$" + base64.encodeToString(this.salt) + "$"
+                + base64.encodeToString(this.hash);
+    }
+
+    /**
+     * Reads a stored credential. Passwords stored before they were hashed are hashed as they are read.
+     *
+     * @param stored - A credential written by encode(), or a plain text password.
+     * @return The credential, or null if nothing was stored.
+     */
+    public static Credential fromStored(String stored)
+    {
+        if (stored == null)
+        {
+            return null;
+        }
+
+        String[] parts = stored.split("\\$");
+        if (parts.length == 4 && parts[0].equals(PREFIX))
+        {
+            try
+            {
+                Base64.Decoder base64 = Base64.getDecoder();
+                return new Credential(Integer.parseInt(parts[1]), base64.decode(parts[2]), base64.decode(parts[3]));
+            }
+            catch (IllegalArgumentException e)
+            {
+                // Not an encoded credential after all
+            }
+        }
+        return create(stored);
+    }
+
+    /**
+     * Runs PBKDF2 over a password.
+     */
+    private static byte[] derive(String password, byte[] salt, int iterations)
+    {
+        PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterations, HASH_BITS);
+        try
+        {
+            return SecretKeyFactory.getInstance(ALGORITHM).generateSecret(spec).getEncoded();
+        }
+        catch (GeneralSecurityException e)
+        {
+            // Every Java platform is required to support PBKDF2WithHmacSHA256
+            throw new IllegalStateException(e);
+        }
+        finally
+        {
+            spec.clearPassword();
+        }
+    }
+
+    /**
+     * Main method for testing.
+     */
+    public static void main(String[] args)
+    {
+        Credential credential = Credential.create("hunter2");
+        String stored = credential.encode();
+        System.out.println(stored);
+
+        // Test 1
+        if (Credential.fromStored(stored).verify("hunter2"))
+            System.out.println("PASSED Test - 1");
+        else
+            System.out.println("FAILED Test - 1: Expected the stored credential to verify");
+
+        // Test 2
+        if (!credential.verify("hunter3"))
+            System.out.println("PASSED Test - 2");
+        else
+            System.out.println("FAILED Test - 2: Expected a wrong password to fail");
+
+        // Test 3
+        if (Credential.fromStored("plaintext").verify("plaintext"))
+            System.out.println("PASSED Test - 3");
+        else
+            System.out.println("FAILED Test - 3: Expected a plain text password to be hashed on load");
+    }
+}
@@ -1,21 +1,19 @@
 package Visitors;
 
-import java.util.Calendar;
-
 /**
  * Provides a structure for persisting fines paid by library visitors.
  */
 public class PaidFine implements java.io.Serializable
 {
     private int amount;
-    private Calendar datePaid;
+    private long datePaid;
 
     /**
      * Default constructor. Date is initialized to current date.
      *
      * @param amount - The amount charged due to the fine.
      */
-    public PaidFine(int amount, Calendar datePaid)
+    public PaidFine(int amount, long datePaid)
     {
         this.amount = amount;
         this.datePaid = datePaid;
@@ -26,7 +24,7 @@ public class PaidFine implements java.io.Serializable
      *
      * @return The fine's paid date.
      */
-    public Calendar getDatePaid()
+    public long getDatePaid()
     {
         return this.datePaid;
     }
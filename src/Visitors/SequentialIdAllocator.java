@@ -0,0 +1,107 @@
+package Visitors;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hands out visitor IDs in order from a single counter, starting at the lowest ten digit ID.
+ *
+ * @author Kyler Freas
+ */
+public class SequentialIdAllocator implements VisitorIdAllocator
+{
+    private AtomicLong counter;
+
+    /**
+     * Creates an allocator that starts at the lowest visitor ID.
+     */
+    public SequentialIdAllocator()
+    {
+        this(FIRST_ID);
+    }
+
+    /**
+     * Creates an allocator that continues from a persisted counter.
+     *
+     * @param counter - The next ID to hand out.
+     */
+    public SequentialIdAllocator(long counter)
+    {
+        this.counter = new AtomicLong(counter);
+    }
+
+    /**
+     * Takes the next unused ID.
+     *
+     * @return A visitor ID that has not been handed out before.
+     */
+    @Override
+    public long next()
+    {
+        long id;
+        do
+        {
+            id = this.counter.getAndIncrement();
+        }
+        while (id == ADMIN_ID);
+
+        if (id > LAST_ID)
+        {
+            throw new IllegalStateException("No visitor IDs left");
+        }
+        return id;
+    }
+
+    /**
+     * Takes a batch of unused IDs with a single update of the counter.
+     *
+     * @param count - The number of IDs to take.
+     * @return Visitor IDs that have not been handed out before.
+     */
+    @Override
+    public long[] next(int count)
+    {
+        long[] ids = new long[count];
+        int taken = 0;
+        while (taken < count)
+        {
+            // The admin's ID may fall inside the block, in which case one more is taken
+            int wanted = count - taken;
+            long first = this.counter.getAndAdd(wanted);
+            for (long id = first; id < first + wanted; id++)
+            {
+                if (id > LAST_ID)
+                {
+                    throw new IllegalStateException("No visitor IDs left");
+                }
+                if (id != ADMIN_ID)
+                {
+                    ids[taken++] = id;
+                }
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Marks an ID as taken. Only the next ID in order is skipped, which covers registrations replayed from the journal
+     * in the order they were handed out.
+     *
+     * @param id - The ID that was taken.
+     */
+    @Override
+    public void reserve(long id)
+    {
+        this.counter.compareAndSet(id, id + 1);
+    }
+
+    /**
+     * Gets the allocator's single counter.
+     *
+     * @return The next ID to hand out.
+     */
+    @Override
+    public long[] getCounters()
+    {
+        return new long[] { this.counter.get() };
+    }
+}
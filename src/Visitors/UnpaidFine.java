@@ -1,7 +1,5 @@
 package Visitors;
 
-import java.util.Calendar;
-
 /**
  * Provides a structure for persisting fines accumulated by library visitors.
  *
@@ -10,14 +8,14 @@ import java.util.Calendar;
 public class UnpaidFine implements java.io.Serializable
 {
     private int amount;
-    private Calendar dateAccumulated;
+    private long dateAccumulated;
 
     /**
      * Default constructor. Date is initialized to current date.
      *
      * @param amount - The amount charged due to the fine.
      */
-    public UnpaidFine(int amount, Calendar dateAccumulated)
+    public UnpaidFine(int amount, long dateAccumulated)
     {
         this.amount = amount;
         this.dateAccumulated = dateAccumulated;
@@ -28,7 +26,7 @@ public class UnpaidFine implements java.io.Serializable
      *
      * @return The fine's paid date.
      */
-    public Calendar getDateAccumulated()
+    public long getDateAccumulated()
     {
         return this.dateAccumulated;
     }
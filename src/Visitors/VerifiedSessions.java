@@ -0,0 +1,140 @@
+package Visitors;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Remembers the logins that were recently verified, so a terminal that logs in again with the same username and
+ * password skips hashing the password at the full work factor. Each entry keeps a keyed HMAC of the password, made with
+ * a key that only lives in memory, and the credential it was checked against. An entry stops matching once the
+ * credential changes or the entry expires, and the least recently used entries are dropped when the cache is full.
+ *
+ * @author Kyler Freas
+ */
+class VerifiedSessions
+{
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final int CAPACITY = 256;
+    private static final long LIFETIME_MILLIS = 15 * 60 * 1000;
+
+    private SecretKeySpec key;
+    private LinkedHashMap<String, Session> sessions;
+
+    /**
+     * A verified login.
+     */
+    private static class Session
+    {
+        private Long clientID;
+        private Credential credential;
+        private byte[] digest;
+        private long expires;
+    }
+
+    /**
+     * Creates an empty cache with a new random key.
+     */
+    VerifiedSessions()
+    {
+        byte[] secret = new byte[32];
+        new SecureRandom().nextBytes(secret);
+        this.key = new SecretKeySpec(secret, ALGORITHM);
+        this.sessions = new LinkedHashMap<String, Session>(16, 0.75f, true)
+        {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Session> eldest)
+            {
+                return this.size() > CAPACITY;
+            }
+        };
+    }
+
+    /**
+     * Checks a login against the cache, in constant time.
+     *
+     * @param clientID - The client logging in.
+     * @param username - The username being logged in to.
+     * @param credential - The account's current credential.
+     * @param password - The password that was given.
+     * @return True if the same client verified the same password against the same credential recently.
+     */
+    synchronized boolean check(Long clientID, String username, Credential credential, String password)
+    {
+        Session session = this.sessions.get(key(clientID, username));
+        if (session == null)
+        {
+            return false;
+        }
+        if (session.credential != credential || session.expires < System.currentTimeMillis())
+        {
+            this.sessions.remove(key(clientID, username));
+            return false;
+        }
+        return MessageDigest.isEqual(session.digest, this.digest(password));
+    }
+
+    /**
+     * Remembers a login that was verified against the full hash.
+     *
+     * @param clientID - The client that logged in.
+     * @param username - The username that was logged in to.
+     * @param credential - The credential the password was verified against.
+     * @param password - The password that was verified.
+     */
+    synchronized void remember(Long clientID, String username, Credential credential, String password)
+    {
+        Session session = new Session();
+        session.clientID = clientID;
+        session.credential = credential;
+        session.digest = this.digest(password);
+        session.expires = System.currentTimeMillis() + LIFETIME_MILLIS;
+        this.sessions.put(key(clientID, username), session);
+    }
+
+    /**
+     * Forgets every login of a client, as when it disconnects.
+     *
+     * @param clientID - The client to forget.
+     */
+    synchronized void forget(Long clientID)
+    {
+        Iterator<Session> sessions = this.sessions.values().iterator();
+        while (sessions.hasNext())
+        {
+            if (sessions.next().clientID.equals(clientID))
+            {
+                sessions.remove();
+            }
+        }
+    }
+
+    private static String key(Long clientID, String username)
+    {
+        return clientID + "," + username;
+    }
+
+    /**
+     * Makes the keyed HMAC of a password.
+     */
+    private byte[] digest(String password)
+    {
+        try
+        {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(this.key);
+            return mac.doFinal(password.getBytes(StandardCharsets.UTF_8));
+        }
+        catch (GeneralSecurityException e)
+        {
+            // Every Java platform is required to support HmacSHA256
+            throw new IllegalStateException(e);
+        }
+    }
+}
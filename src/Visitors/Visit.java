@@ -1,6 +1,6 @@
 package Visitors;
 
-import java.util.Calendar;
+import Library.TimeClock;
 
 /**
  * A single visit in the library.
@@ -9,23 +9,29 @@ import java.util.Calendar;
  */
 public class Visit implements java.io.Serializable
 {
-    private Calendar startDateTime;
-    private Calendar endDateTime;
+    private long startDateTime;
+    private long endDateTime;
     private Long visitorID;
 
     /**
      * Default constructor. Initializes with start time and visitor ID.
+     *
+     * @param startTime - When the visit started, in milliseconds since the epoch.
+     * @param visitorID - The ID of the visitor.
      */
-    public Visit(Calendar startTime, Long visitorID)
+    public Visit(long startTime, Long visitorID)
     {
         this.startDateTime = startTime;
+        this.endDateTime = TimeClock.NEVER;
         this.visitorID = visitorID;
     }
 
     /**
      * Sets the end time of the visit. Called by the Library when a visit should end.
+     *
+     * @param endTime - When the visit ended, in milliseconds since the epoch.
      */
-    public void end(Calendar endTime)
+    public void end(long endTime)
     {
         this.endDateTime = endTime;
     }
@@ -43,9 +49,9 @@ public class Visit implements java.io.Serializable
     /**
      * Getter for the visit's start time.
      *
-     * @return The visit's start time.
+     * @return The visit's start time, in milliseconds since the epoch.
      */
-    public Calendar getStartDateTime()
+    public long getStartDateTime()
     {
         return this.startDateTime;
     }
@@ -53,30 +59,10 @@ public class Visit implements java.io.Serializable
     /**
      * Getter for the visit's end time.
      *
-     * @return The visit's end time.
+     * @return The visit's end time, in milliseconds since the epoch, or TimeClock.NEVER if it has not ended.
      */
-    public Calendar getEndDateTime()
+    public long getEndDateTime()
     {
         return this.endDateTime;
     }
-
-    /**
-     * Formats the current date in the form YYYY/MM/DD.
-     *
-     * @return A String with the formatted date.
-     */
-    public String getFormattedDate(Calendar datetime)
-    {
-        return datetime.get(Calendar.YEAR) + "/" + datetime.get(Calendar.MONTH) + "/" + datetime.get(Calendar.DAY_OF_MONTH);
-    }
-
-    /**
-     * Formats the current time in the form HH:MM:SS.
-     *
-     * @return A String with the formatted time.
-     */
-    public String getFormattedTime(Calendar datetime)
-    {
-        return datetime.get(Calendar.HOUR_OF_DAY) + ":" + datetime.get(Calendar.MINUTE) + ":" + datetime.get(Calendar.SECOND);
-    }
 }
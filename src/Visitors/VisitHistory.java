@@ -0,0 +1,421 @@
+package Visitors;
+
+import Library.TimeClock;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * The history of finished visits, partitioned by the day each visit started. Every partition keeps its visits in
+ * primitive columns of start time, end time and visitor ID, so a finished visit costs three longs instead of a Visit
+ * object and a boxed ID.
+ *
+ * Only the most recent partitions are kept in memory. Once there are more than the resident limit, the oldest are
+ * archived to a file per day and dropped, so memory stays bounded however long the library runs. Range queries read
+ * archived days back from disk as they are reached.
+ *
+ * Each archived day also has a small summary file holding its number of visits and their total length, so the totals of
+ * the whole history can be had without reading the archive back.
+ *
+ * @author Kyler Freas
+ */
+public class VisitHistory implements java.io.Serializable
+{
+    private static final String ARCHIVE_SUFFIX = ".visits";
+    private static final String SUMMARY_SUFFIX = ".summary";
+
+    private File archive;
+    private int residentDays;
+    private TreeMap<Long, Partition> partitions;
+    private TreeSet<Long> archivedDays;
+
+    // Number of visits and total visit length of each archived day, read from the summary files
+    private TreeMap<Long, long[]> archivedTotals;
+
+    /**
+     * Receives the visits found by a query.
+     */
+    public interface VisitConsumer
+    {
+        /**
+         * Called once for each visit.
+         *
+         * @param start - When the visit started, in milliseconds since the epoch.
+         * @param end - When the visit ended, in milliseconds since the epoch.
+         * @param visitorID - The ID of the visitor.
+         */
+        void accept(long start, long end, long visitorID);
+    }
+
+    /**
+     * Receives the totals of archived days.
+     */
+    public interface DayConsumer
+    {
+        /**
+         * Called once for each archived day.
+         *
+         * @param day - The day, as numbered by TimeClock.dayOf().
+         * @param visits - The number of visits that started on the day.
+         * @param visitMillis - The total length of those visits, in milliseconds.
+         */
+        void accept(long day, long visits, long visitMillis);
+    }
+
+    /**
+     * The visits that started on a single day, as columns.
+     */
+    private static class Partition implements java.io.Serializable
+    {
+        private long[] starts = new long[16];
+        private long[] ends = new long[16];
+        private long[] visitorIDs = new long[16];
+        private int size;
+
+        private void add(long start, long end, long visitorID)
+        {
+            if (this.size == this.starts.length)
+            {
+                this.starts = Arrays.copyOf(this.starts, this.size * 2);
+                this.ends = Arrays.copyOf(this.ends, this.size * 2);
+                this.visitorIDs = Arrays.copyOf(this.visitorIDs, this.size * 2);
+            }
+            this.starts[this.size] = start;
+            this.ends[this.size] = end;
+            this.visitorIDs[this.size] = visitorID;
+            this.size++;
+        }
+    }
+
+    /**
+     * Creates a visit history, picking up any days already archived in the archive directory.
+     *
+     * @param archive - The directory archived days are kept in.
+     * @param residentDays - The number of days kept in memory.
+     */
+    public VisitHistory(File archive, int residentDays)
+    {
+        this.archive = archive;
+        this.residentDays = residentDays;
+        this.partitions = new TreeMap<>();
+        this.archivedDays = new TreeSet<>();
+        this.archivedTotals = new TreeMap<>();
+
+        File[] files = archive.listFiles((dir, name) -> name.endsWith(ARCHIVE_SUFFIX));
+        if (files != null)
+        {
+            for (File file : files)
+            {
+                String name = file.getName();
+                try
+                {
+                    this.archivedDays.add(Long.parseLong(name.substring(0, name.length() - ARCHIVE_SUFFIX.length())));
+                }
+                catch (NumberFormatException nfe)
+                {
+                    // Not an archived day
+                }
+            }
+        }
+
+        for (long day : this.archivedDays)
+        {
+            this.archivedTotals.put(day, this.readSummary(day));
+        }
+    }
+
+    /**
+     * Adds a finished visit. A visit from a day that was already archived is appended to that day's archive.
+     *
+     * @param start - When the visit started, in milliseconds since the epoch.
+     * @param end - When the visit ended, in milliseconds since the epoch.
+     * @param visitorID - The ID of the visitor.
+     */
+    public synchronized void add(long start, long end, long visitorID)
+    {
+        long day = TimeClock.dayOf(start);
+        if (this.archivedDays.contains(day))
+        {
+            Partition late = new Partition();
+            late.add(start, end, visitorID);
+            if (this.append(day, late))
+            {
+                return;
+            }
+        }
+
+        this.partitions.computeIfAbsent(day, d -> new Partition()).add(start, end, visitorID);
+
+        while (this.partitions.size() > this.residentDays)
+        {
+            Map.Entry<Long, Partition> oldest = this.partitions.firstEntry();
+            if (!this.append(oldest.getKey(), oldest.getValue()))
+            {
+                // Keep the day in memory and try again with the next visit
+                break;
+            }
+            this.partitions.remove(oldest.getKey());
+            this.archivedDays.add(oldest.getKey());
+        }
+    }
+
+    /**
+     * Adds a visit loaded from a snapshot. Visits from days that have since been archived are already in the archive
+     * and are skipped.
+     *
+     * @param start - When the visit started, in milliseconds since the epoch.
+     * @param end - When the visit ended, in milliseconds since the epoch.
+     * @param visitorID - The ID of the visitor.
+     * @return True if the visit was added, false if its day was already archived.
+     */
+    synchronized boolean restore(long start, long end, long visitorID)
+    {
+        if (this.archivedDays.contains(TimeClock.dayOf(start)))
+        {
+            return false;
+        }
+        this.add(start, end, visitorID);
+        return true;
+    }
+
+    /**
+     * Finds every visit that started within a range of time, in order of the day they started. Archived days in the
+     * range are read from disk.
+     *
+     * @param from - The start of the range, inclusive, in milliseconds since the epoch.
+     * @param to - The end of the range, exclusive, in milliseconds since the epoch.
+     * @param consumer - Receives each visit.
+     */
+    public synchronized void forEach(long from, long to, VisitConsumer consumer)
+    {
+        if (from >= to)
+        {
+            return;
+        }
+
+        long firstDay = TimeClock.dayOf(from);
+        long lastDay = TimeClock.dayOf(to - 1);
+
+        TreeSet<Long> days = new TreeSet<>(this.archivedDays.subSet(firstDay, true, lastDay, true));
+        days.addAll(this.partitions.subMap(firstDay, true, lastDay, true).keySet());
+        this.visitDays(days, from, to, consumer);
+    }
+
+    /**
+     * Finds every visit, archived or not, in order of the day they started.
+     *
+     * @param consumer - Receives each visit.
+     */
+    public synchronized void forEach(VisitConsumer consumer)
+    {
+        TreeSet<Long> days = new TreeSet<>(this.archivedDays);
+        days.addAll(this.partitions.keySet());
+        this.visitDays(days, Long.MIN_VALUE, Long.MAX_VALUE, consumer);
+    }
+
+    /**
+     * Finds every visit still held in memory. Archived days are left out.
+     *
+     * @param consumer - Receives each visit.
+     */
+    public synchronized void forEachResident(VisitConsumer consumer)
+    {
+        for (Partition partition : this.partitions.values())
+        {
+            for (int i = 0; i < partition.size; i++)
+            {
+                consumer.accept(partition.starts[i], partition.ends[i], partition.visitorIDs[i]);
+            }
+        }
+    }
+
+    /**
+     * Gets the totals of every archived day from their summaries, without reading the archive.
+     *
+     * @param consumer - Receives the totals of each archived day.
+     */
+    public synchronized void forEachArchivedDay(DayConsumer consumer)
+    {
+        for (Map.Entry<Long, long[]> day : this.archivedTotals.entrySet())
+        {
+            consumer.accept(day.getKey(), day.getValue()[0], day.getValue()[1]);
+        }
+    }
+
+    /**
+     * Gets the number of visits held in memory.
+     *
+     * @return The number of resident visits.
+     */
+    public synchronized int residentSize()
+    {
+        int size = 0;
+        for (Partition partition : this.partitions.values())
+        {
+            size += partition.size;
+        }
+        return size;
+    }
+
+    /**
+     * Passes on the visits of the given days that started within a range of time.
+     *
+     * @param days - The days to visit, in order.
+     * @param from - The start of the range, inclusive.
+     * @param to - The end of the range, exclusive.
+     * @param consumer - Receives each visit.
+     */
+    private void visitDays(TreeSet<Long> days, long from, long to, VisitConsumer consumer)
+    {
+        for (long day : days)
+        {
+            Partition partition = this.partitions.get(day);
+            if (partition == null)
+            {
+                partition = this.load(day);
+            }
+
+            for (int i = 0; i < partition.size; i++)
+            {
+                if (partition.starts[i] >= from && partition.starts[i] < to)
+                {
+                    consumer.accept(partition.starts[i], partition.ends[i], partition.visitorIDs[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Appends the visits of a partition to the archive file for its day.
+     *
+     * @param day - The day of the partition.
+     * @param partition - The visits to archive.
+     * @return True if the visits were written to disk.
+     */
+    private boolean append(long day, Partition partition)
+    {
+        this.archive.mkdirs();
+        File file = new File(this.archive, day + ARCHIVE_SUFFIX);
+
+        try (FileOutputStream fileOut = new FileOutputStream(file, true);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOut)))
+        {
+            for (int i = 0; i < partition.size; i++)
+            {
+                out.writeLong(partition.starts[i]);
+                out.writeLong(partition.ends[i]);
+                out.writeLong(partition.visitorIDs[i]);
+            }
+            out.flush();
+            fileOut.getFD().sync();
+        }
+        catch (IOException io)
+        {
+            io.printStackTrace();
+            return false;
+        }
+
+        long[] totals = this.archivedTotals.computeIfAbsent(day, d -> new long[2]);
+        for (int i = 0; i < partition.size; i++)
+        {
+            totals[0]++;
+            totals[1] += partition.ends[i] - partition.starts[i];
+        }
+        this.writeSummary(day, file.length(), totals);
+        return true;
+    }
+
+    /**
+     * Reads the summary of an archived day. A summary that is missing, or that does not cover the whole of the day's
+     * archive, is rebuilt from the archive.
+     *
+     * @param day - The archived day.
+     * @return The number of visits of the day and their total length.
+     */
+    private long[] readSummary(long day)
+    {
+        long archived = new File(this.archive, day + ARCHIVE_SUFFIX).length();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(new File(this.archive, day + SUMMARY_SUFFIX)))))
+        {
+            long covered = in.readLong();
+            long[] totals = { in.readLong(), in.readLong() };
+            if (covered == archived)
+            {
+                return totals;
+            }
+        }
+        catch (IOException io)
+        {
+            // Archived before days had summaries, or cut short by a crash
+        }
+
+        Partition partition = this.load(day);
+        long[] totals = new long[2];
+        for (int i = 0; i < partition.size; i++)
+        {
+            totals[0]++;
+            totals[1] += partition.ends[i] - partition.starts[i];
+        }
+        this.writeSummary(day, archived, totals);
+        return totals;
+    }
+
+    /**
+     * Replaces the summary of an archived day.
+     *
+     * @param day - The archived day.
+     * @param covered - The length of the day's archive the totals were counted from.
+     * @param totals - The number of visits of the day and their total length.
+     */
+    private void writeSummary(long day, long covered, long[] totals)
+    {
+        File summary = new File(this.archive, day + SUMMARY_SUFFIX);
+        File temp = new File(this.archive, day + SUMMARY_SUFFIX + ".tmp");
+        try
+        {
+            try (DataOutputStream out = new DataOutputStream(new FileOutputStream(temp)))
+            {
+                out.writeLong(covered);
+                out.writeLong(totals[0]);
+                out.writeLong(totals[1]);
+            }
+            Files.move(temp.toPath(), summary.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (IOException io)
+        {
+            // The summary is rebuilt from the archive the next time it is read
+            io.printStackTrace();
+        }
+    }
+
+    /**
+     * Reads an archived day back from disk.
+     *
+     * @param day - The archived day.
+     * @return The visits of the day. Empty if the archive could not be read.
+     */
+    private Partition load(long day)
+    {
+        Partition partition = new Partition();
+        try
+        {
+            ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(new File(this.archive, day + ARCHIVE_SUFFIX).toPath()));
+            while (buffer.remaining() >= 3 * Long.BYTES)
+            {
+                partition.add(buffer.getLong(), buffer.getLong(), buffer.getLong());
+            }
+        }
+        catch (IOException io)
+        {
+            io.printStackTrace();
+        }
+        return partition;
+    }
+}
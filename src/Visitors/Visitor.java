@@ -2,7 +2,7 @@ package Visitors;
 
 import java.util.ArrayList;
 import Books.Book;
-import java.util.Calendar;
+import Library.TimeClock;
 
 /**
  * Represents a visitor to the library. Provides all state associated with visitors including their personal data,
@@ -12,22 +12,31 @@ import java.util.Calendar;
  */
 public class Visitor implements java.io.Serializable
 {
+    /**
+     * The most books a visitor may have checked out at once.
+     */
+    public static final int MAX_CHECKOUTS = 5;
+
     private String firstName;
     private String lastName;
     private String address;
     private String phoneNumber;
     private Long id;
     private String username;
-    private String password;
+    private Credential credential;
     private String role;
-    private ArrayList<CheckOut> checkedOutBooks;
+    /**
+     * The visitor's checkouts, in the order they were made, packed into the first checkedOutCount slots.
+     */
+    private CheckOut[] checkedOutBooks;
+    private int checkedOutCount;
     private ArrayList<UnpaidFine> unpaidFines;
     private ArrayList<PaidFine> paidFines;
-    private Calendar registeredDate;
+    private long registeredDate;
     private int balance;
 
     /**
-     * Default constructor. Checked out books and fines are initialized to empty ArrayLists, balance is initialized to
+     * Default constructor. Checked out books and fines are initialized to empty, balance is initialized to
      * 0. Registered date is initialized to nothing since visitor has not yet been registered.
      *
      * @param firstName - The visitor's first name.
@@ -42,12 +51,13 @@ public class Visitor implements java.io.Serializable
         this.address = address;
         this.phoneNumber = phoneNumber;
         this.username = null;
-        this.password = null;
+        this.credential = null;
         this.role = null;
-        this.checkedOutBooks = new ArrayList<>();
+        this.checkedOutBooks = new CheckOut[MAX_CHECKOUTS];
+        this.checkedOutCount = 0;
         this.unpaidFines = new ArrayList<>();
         this.paidFines = new ArrayList<>();
-        this.registeredDate = null;
+        this.registeredDate = TimeClock.NEVER;
         this.balance = 0;
     }
 
@@ -55,9 +65,9 @@ public class Visitor implements java.io.Serializable
      * Registers the visitor in the library. Sets the visitor's id and registered date.
      *
      * @param id - The visitor's assigned ID.
-     * @param registeredDate - The date of registration.
+     * @param registeredDate - The date of registration, in milliseconds since the epoch.
      */
-    public void register(Long id, Calendar registeredDate)
+    public void register(Long id, long registeredDate)
     {
         this.id = id;
         this.registeredDate = registeredDate;
@@ -72,29 +82,54 @@ public class Visitor implements java.io.Serializable
      *
      */
     public void createAccount(String username, String password, String role)
+    {
+        this.createAccount(username, Credential.create(password), role);
+    }
+
+    /**
+     * Method that creates the account associated with this user from a password that is already hashed
+     *
+     * @param username - the username that logs into the system
+     * @param credential - the hash of the password that logs into the system for the associated username
+     * @param role - admin or nah?
+     */
+    public void createAccount(String username, Credential credential, String role)
     {
         this.username = username;
-        this.password = password;
+        this.credential = credential;
         this.role = role;
     }
 
+    /**
+     * Replaces the hash of the account's password, as when it is hashed again at a higher work factor.
+     *
+     * @param credential - the new hash of the password
+     */
+    public void setCredential(Credential credential)
+    {
+        this.credential = credential;
+    }
+
     /**
      * Checks out a book for a registered visitor.
      *
      * @param books - A list of books to be checked out.
+     * @return The books that were actually checked out.
      */
-    public void checkOutBooks(ArrayList<Book> books, Calendar checkoutDate)
+    public ArrayList<Book> checkOutBooks(ArrayList<Book> books, long checkoutDate)
     {
+        ArrayList<Book> checkedOut = new ArrayList<>();
+
         // Check that this will not exceed max of 5 books
-        if (this.checkedOutBooks.size() + books.size() > 5)
+        if (this.checkedOutCount + books.size() > MAX_CHECKOUTS)
         {
-            return;
+            return checkedOut;
         }
 
         // Check that visitor does not have outstanding fines
         if (this.balance > 0)
         {
-            return;
+            return checkedOut;
         }
 
         // Create the CheckOut objects for each book
@@ -103,9 +138,11 @@ public class Visitor implements java.io.Serializable
             // Only check out the book if there are available copies
             if (book.checkout())
             {
-                this.checkedOutBooks.add(new CheckOut(book, checkoutDate));
+                this.checkedOutBooks[this.checkedOutCount++] = new CheckOut(book, checkoutDate);
+                checkedOut.add(book);
             }
         }
+        return checkedOut;
     }
 
     /**
@@ -115,12 +152,12 @@ public class Visitor implements java.io.Serializable
      */
     public ArrayList<Book> getCheckedOutBooks()
     {
-        ArrayList<Book> books = new ArrayList<>();
+        ArrayList<Book> books = new ArrayList<>(this.checkedOutCount);
 
         // Pull books out of each checkout object
-        for (CheckOut checkout: this.checkedOutBooks)
+        for (int i = 0; i < this.checkedOutCount; i++)
         {
-            books.add(checkout.getBook());
+            books.add(this.checkedOutBooks[i].getBook());
         }
         return books;
     }
@@ -128,11 +165,26 @@ public class Visitor implements java.io.Serializable
     /**
      * Gets a list of the visitor's CheckOut objects.
      *
-     * @return An ArrayList representing the visitor's CheckOut objects.
+     * @return An ArrayList holding the visitor's current CheckOut objects, in the order they were made.
      */
     public ArrayList<CheckOut> getCheckOut()
     {
-        return this.checkedOutBooks;
+        ArrayList<CheckOut> checkouts = new ArrayList<>(this.checkedOutCount);
+        for (int i = 0; i < this.checkedOutCount; i++)
+        {
+            checkouts.add(this.checkedOutBooks[i]);
+        }
+        return checkouts;
+    }
+
+    /**
+     * Gets the number of books the visitor has checked out.
+     *
+     * @return The number of current checkouts.
+     */
+    public int getCheckOutCount()
+    {
+        return this.checkedOutCount;
     }
 
     /**
@@ -145,9 +197,9 @@ public class Visitor implements java.io.Serializable
         return this.username;
     }
 
-    public String getPassword()
+    public Credential getCredential()
     {
-        return this.password;
+        return this.credential;
     }
 
     public String getRole()
@@ -156,26 +208,27 @@ public class Visitor implements java.io.Serializable
     }
 
     /**
-     * Returns the visitor's books to the library. Applies any fines associated with books returned late.
+     * Returns the visitor's books to the library. Applies any fines associated with books returned late. Each book is
+     * found among at most MAX_CHECKOUTS checkouts, without building any lists.
      *
      * @param books - An arrayList representing the books to be returned.
      */
-    public double returnBooks(ArrayList<Book> books, Calendar dateReturned)
+    public double returnBooks(ArrayList<Book> books, long dateReturned)
     {
         double totalFines = 0.0;
 
         for (Book book: books)
         {
             // Find the checkout object associated with the book.
-            ArrayList<Book> checkedOut = this.getCheckedOutBooks();
+            int index = this.indexOfCheckOut(book);
 
             // Check that visitor has the book
-            if (!checkedOut.contains(book))
+            if (index < 0)
             {
                 continue;
             }
 
-            CheckOut checkout = this.checkedOutBooks.get(checkedOut.indexOf(book));
+            CheckOut checkout = this.checkedOutBooks[index];
             checkout.returnBook(dateReturned);
 
             // Calculate any fines applied to this book.
@@ -195,18 +248,48 @@ public class Visitor implements java.io.Serializable
             book.addCopies(1);
 
             // Remove the checkout
-            this.checkedOutBooks.remove(checkout);
+            this.removeCheckOut(index);
         }
 
         return totalFines;
     }
 
+    /**
+     * Finds the earliest checkout of a book.
+     *
+     * @param book - The checked out book.
+     * @return The index of the checkout, or -1 if the visitor does not have the book.
+     */
+    private int indexOfCheckOut(Book book)
+    {
+        for (int i = 0; i < this.checkedOutCount; i++)
+        {
+            if (this.checkedOutBooks[i].getBook().equals(book))
+            {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Removes a checkout, shifting the later checkouts down so they stay in order.
+     *
+     * @param index - The index of the checkout.
+     */
+    private void removeCheckOut(int index)
+    {
+        this.checkedOutCount--;
+        System.arraycopy(this.checkedOutBooks, index + 1, this.checkedOutBooks, index, this.checkedOutCount - index);
+        this.checkedOutBooks[this.checkedOutCount] = null;
+    }
+
     /**
      * Pays a given amount toward the visitor's fine balance.
      *
      * @param amount - The amount to pay toward fines.
      */
-    public void payFine(int amount, Calendar datePaid)
+    public void payFine(int amount, long datePaid)
     {
         this.balance -= amount;
         this.paidFines.add(new PaidFine(amount, datePaid));
@@ -216,12 +299,13 @@ public class Visitor implements java.io.Serializable
      * This undos the paying of a fine
      * @param amount - amount of the fine
      * @param datePaid - date that the fine was paid
+     * @return The payment that was taken back.
      */
-    public void undoPayFine(int amount, Calendar datePaid)
+    public PaidFine undoPayFine(int amount, long datePaid)
     {
         this.balance += amount;
 
-        this.paidFines.remove(this.paidFines.size() - 1);
+        return this.paidFines.remove(this.paidFines.size() - 1);
     }
 
     /**
@@ -234,10 +318,10 @@ public class Visitor implements java.io.Serializable
     private int calculateFine(CheckOut checkout)
     {
         int fineAmount = 0;
-        int returnDate = checkout.getReturnDate().get(Calendar.DAY_OF_YEAR);
-        int dueDate = checkout.getDueDate().get(Calendar.DAY_OF_YEAR);
+        long returnDate = TimeClock.dayOf(checkout.getReturnDate());
+        long dueDate = TimeClock.dayOf(checkout.getDueDate());
 
-        int days = returnDate - dueDate;
+        int days = (int) (returnDate - dueDate);
 
         if (days >= 1)
         {
@@ -262,14 +346,13 @@ public class Visitor implements java.io.Serializable
         }
 
         // Apply date offset
-        Calendar startDate = Calendar.getInstance();
-        startDate.add(Calendar.DAY_OF_MONTH, -days);
+        long startDate = TimeClock.plusDays(System.currentTimeMillis(), -days);
 
         // Calculate total fines paid by visitor in date range
         int totalFines = 0;
         for (PaidFine fine: this.paidFines)
         {
-            if (fine.getDatePaid().after(startDate))
+            if (fine.getDatePaid() > startDate)
             {
                 totalFines += fine.getAmount();
             }
@@ -293,14 +376,13 @@ public class Visitor implements java.io.Serializable
         }
 
         // Apply date offset
-        Calendar startDate = Calendar.getInstance();
-        startDate.add(Calendar.DAY_OF_MONTH, -days);
+        long startDate = TimeClock.plusDays(System.currentTimeMillis(), -days);
 
         // Calculate total fines paid by visitor in date range
         int totalFines = 0;
         for (UnpaidFine fine: this.unpaidFines)
         {
-            if (fine.getDateAccumulated().after(startDate))
+            if (fine.getDateAccumulated() > startDate)
             {
                 totalFines += fine.getAmount();
             }
@@ -338,6 +420,40 @@ public class Visitor implements java.io.Serializable
                 && visitor.getLastName().equals(this.lastName);
     }
 
+    /**
+     * Override hashCode to agree with equals, which only compares names.
+     *
+     * @return The hash of the visitor's identity.
+     */
+    @Override
+    public int hashCode()
+    {
+        return this.getIdentityKey().hashCode();
+    }
+
+    /**
+     * Gets the key two visitors share exactly when they are equal, for finding duplicate registrations by lookup.
+     *
+     * @return The visitor's identity key.
+     */
+    public String getIdentityKey()
+    {
+        return identityKey(this.firstName, this.lastName);
+    }
+
+    /**
+     * Builds the identity key for a visitor's name. The names are separated by a character that cannot be typed into
+     * a command, so no two different names share a key.
+     *
+     * @param firstName - The first name of the visitor.
+     * @param lastName - The last name of the visitor.
+     * @return The identity key.
+     */
+    public static String identityKey(String firstName, String lastName)
+    {
+        return firstName + '\u0000' + lastName;
+    }
+
     /**
      * Simple getter for retrieving the first name of the visitor.
      *
@@ -358,6 +474,26 @@ public class Visitor implements java.io.Serializable
         return this.lastName;
     }
 
+    /**
+     * Simple getter for retrieving the visitor's home address.
+     *
+     * @return The visitor's home address.
+     */
+    public String getAddress()
+    {
+        return this.address;
+    }
+
+    /**
+     * Simple getter for retrieving the visitor's phone number.
+     *
+     * @return The visitor's phone number.
+     */
+    public String getPhoneNumber()
+    {
+        return this.phoneNumber;
+    }
+
     /**
      * Simple getter for retrieving the visitor's ID.
      *
@@ -381,13 +517,51 @@ public class Visitor implements java.io.Serializable
     /**
      * Simple getter for retrieving the visitor's registered date.
      *
-     * @return The visitor's registered date.
+     * @return The visitor's registered date, in milliseconds since the epoch, or TimeClock.NEVER if not registered.
      */
-    public Calendar getRegisteredDate()
+    public long getRegisteredDate()
     {
         return this.registeredDate;
     }
 
+    /**
+     * Gets the fines the visitor has accumulated.
+     *
+     * @return The visitor's unpaid fines.
+     */
+    ArrayList<UnpaidFine> getUnpaidFines()
+    {
+        return this.unpaidFines;
+    }
+
+    /**
+     * Gets the fines the visitor has paid.
+     *
+     * @return The visitor's paid fines.
+     */
+    ArrayList<PaidFine> getPaidFines()
+    {
+        return this.paidFines;
+    }
+
+    /**
+     * Restores the checkouts, fines and balance of a visitor loaded from a snapshot.
+     *
+     * @param checkedOutBooks - The visitor's checkouts.
+     * @param unpaidFines - The visitor's accumulated fines.
+     * @param paidFines - The visitor's paid fines.
+     * @param balance - The visitor's balance.
+     */
+    void restore(ArrayList<CheckOut> checkedOutBooks, ArrayList<UnpaidFine> unpaidFines, ArrayList<PaidFine> paidFines,
+                 int balance)
+    {
+        this.checkedOutBooks = checkedOutBooks.toArray(new CheckOut[Math.max(MAX_CHECKOUTS, checkedOutBooks.size())]);
+        this.checkedOutCount = checkedOutBooks.size();
+        this.unpaidFines = unpaidFines;
+        this.paidFines = paidFines;
+        this.balance = balance;
+    }
+
     /**
      * Simple setter for setting the visitor's ID.
      *
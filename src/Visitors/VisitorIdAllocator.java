@@ -0,0 +1,79 @@
+package Visitors;
+
+/**
+ * Hands out IDs for newly registered visitors. Visitor IDs are ten digits long, and the admin's ID is never handed
+ * out. An allocator never hands out the same ID twice, and does so without taking a lock.
+ *
+ * The state of an allocator is a set of counters, which are persisted with the visitor storage so IDs keep counting
+ * from where they left off when the library is restarted.
+ *
+ * @author Kyler Freas
+ */
+public interface VisitorIdAllocator extends java.io.Serializable
+{
+    /**
+     * The lowest visitor ID.
+     */
+    long FIRST_ID = 1_000_000_000L;
+
+    /**
+     * The highest visitor ID.
+     */
+    long LAST_ID = 9_999_999_999L;
+
+    /**
+     * The ID of the admin user, which is never handed out.
+     */
+    long ADMIN_ID = 9_000_000_000L;
+
+    /**
+     * Takes the next unused ID.
+     *
+     * @return A visitor ID that has not been handed out before.
+     * @throws IllegalStateException if every ID has been handed out.
+     */
+    long next();
+
+    /**
+     * Takes a batch of unused IDs at once, as for a bulk import.
+     *
+     * @param count - The number of IDs to take.
+     * @return Visitor IDs that have not been handed out before.
+     * @throws IllegalStateException if there are not enough IDs left.
+     */
+    default long[] next(int count)
+    {
+        long[] ids = new long[count];
+        for (int i = 0; i < count; i++)
+        {
+            ids[i] = this.next();
+        }
+        return ids;
+    }
+
+    /**
+     * Marks an ID as taken by a visitor registered outside the allocator, such as one replayed from the journal, so it
+     * is not handed out again.
+     *
+     * @param id - The ID that was taken.
+     */
+    void reserve(long id);
+
+    /**
+     * Gets the counters that make up the allocator's state, for persisting.
+     *
+     * @return The allocator's counters.
+     */
+    long[] getCounters();
+
+    /**
+     * Recreates an allocator from its persisted counters.
+     *
+     * @param counters - The counters returned by getCounters().
+     * @return The allocator.
+     */
+    static VisitorIdAllocator fromCounters(long[] counters)
+    {
+        return new SequentialIdAllocator(counters[0]);
+    }
+}
@@ -0,0 +1,444 @@
+package Visitors;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Registers visitors in bulk from a CSV file, such as an export of the city's patron database. Each line holds the same
+ * fields as the register command: first name, last name, address and phone number. Fields may be quoted, and a quote
+ * inside a quoted field is written twice.
+ *
+ * The file is streamed in chunks of lines. Each chunk is validated and prepared on a pool of worker threads, takes
+ * its visitor IDs in a single batch, and is handed to a listener that persists it in one go and then publishes it, so
+ * no visitor can be used before its registration is persisted. Only a few chunks are held in memory at a time, however large the file. Lines that cannot be registered are
+ * counted as rejects rather than stopping the import.
+ *
+ * @author Kyler Freas
+ */
+public class VisitorImporter
+{
+    /**
+     * The most rejected lines kept in a report, so a file of bad lines does not fill the heap.
+     */
+    private static final int MAX_REJECTS = 100;
+
+    private VisitorStorage visitorStorage;
+    private int chunkSize;
+    private int threads;
+
+    /**
+     * Receives each chunk of visitors once it has been prepared.
+     */
+    public interface ChunkListener
+    {
+        /**
+         * Called once for each chunk, from the worker thread that prepared it. The listener persists the visitors and
+         * then makes them visible with VisitorStorage.publishVisitors().
+         *
+         * @param visitors - The visitors prepared from the chunk.
+         */
+        void committed(List<Visitor> visitors);
+    }
+
+    /**
+     * The outcome of an import.
+     */
+    public static class Report
+    {
+        private AtomicLong lines = new AtomicLong();
+        private AtomicLong imported = new AtomicLong();
+        private AtomicLong malformed = new AtomicLong();
+        private AtomicLong duplicates = new AtomicLong();
+        private ArrayList<String> rejects = new ArrayList<>();
+        private long elapsedMillis;
+
+        public long getLines()
+        {
+            return this.lines.get();
+        }
+
+        public long getImported()
+        {
+            return this.imported.get();
+        }
+
+        public long getMalformed()
+        {
+            return this.malformed.get();
+        }
+
+        public long getDuplicates()
+        {
+            return this.duplicates.get();
+        }
+
+        public long getElapsedMillis()
+        {
+            return this.elapsedMillis;
+        }
+
+        /**
+         * Gets the number of visitors imported per second.
+         *
+         * @return The import throughput.
+         */
+        public long getPerSecond()
+        {
+            return this.elapsedMillis == 0 ? this.getImported() : this.getImported() * 1000 / this.elapsedMillis;
+        }
+
+        /**
+         * Gets the first rejected lines, each with its line number and the reason it was rejected.
+         *
+         * @return Up to 100 rejected lines.
+         */
+        public synchronized List<String> getRejects()
+        {
+            return new ArrayList<>(this.rejects);
+        }
+
+        /**
+         * Records a rejected line.
+         */
+        private synchronized void reject(long lineNumber, String reason)
+        {
+            if (this.rejects.size() < MAX_REJECTS)
+            {
+                this.rejects.add("line " + lineNumber + ": " + reason);
+            }
+        }
+
+        @Override
+        public String toString()
+        {
+            return "Imported " + this.getImported() + " of " + this.getLines() + " visitors in " + this.elapsedMillis
+                    + " ms (" + this.getPerSecond() + " per second). Rejected " + this.getDuplicates()
+                    + " duplicate and " + this.getMalformed() + " malformed.";
+        }
+    }
+
+    /**
+     * Creates an importer for a visitor storage.
+     *
+     * @param visitorStorage - The storage the visitors are registered in.
+     * @param chunkSize - The number of lines registered and committed together.
+     * @param threads - The number of worker threads.
+     */
+    public VisitorImporter(VisitorStorage visitorStorage, int chunkSize, int threads)
+    {
+        this.visitorStorage = visitorStorage;
+        this.chunkSize = chunkSize;
+        this.threads = threads;
+    }
+
+    /**
+     * Imports every visitor in a CSV file. Returns once every chunk has been registered and committed.
+     *
+     * @param file - The CSV file of visitors.
+     * @param hasHeader - Whether the first line is a header to skip.
+     * @param registeredDate - The registration date given to every imported visitor.
+     * @param listener - Receives each chunk of prepared visitors, and publishes them.
+     * @return The number of visitors imported and rejected, and how long it took.
+     */
+    public Report importFile(Path file, boolean hasHeader, long registeredDate, ChunkListener listener)
+            throws IOException
+    {
+        Report report = new Report();
+        long start = System.nanoTime();
+
+        ExecutorService workers = Executors.newFixedThreadPool(this.threads);
+        // Bounds the chunks read ahead of the workers
+        Semaphore pending = new Semaphore(this.threads * 2);
+
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8))
+        {
+            long lineNumber = 0;
+            if (hasHeader && reader.readLine() != null)
+            {
+                lineNumber++;
+            }
+
+            ArrayList<String> chunk = new ArrayList<>(this.chunkSize);
+            long firstLine = lineNumber + 1;
+            String line;
+            while ((line = reader.readLine()) != null)
+            {
+                lineNumber++;
+                chunk.add(line);
+                if (chunk.size() == this.chunkSize)
+                {
+                    this.submit(workers, pending, chunk, firstLine, registeredDate, listener, report);
+                    chunk = new ArrayList<>(this.chunkSize);
+                    firstLine = lineNumber + 1;
+                }
+            }
+            if (!chunk.isEmpty())
+            {
+                this.submit(workers, pending, chunk, firstLine, registeredDate, listener, report);
+            }
+        }
+        finally
+        {
+            workers.shutdown();
+            try
+            {
+                workers.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            }
+            catch (InterruptedException ie)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        report.elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+        return report;
+    }
+
+    /**
+     * Hands a chunk to the workers, waiting first if too many chunks are already waiting.
+     */
+    private void submit(ExecutorService workers, Semaphore pending, List<String> chunk, long firstLine,
+                        long registeredDate, ChunkListener listener, Report report) throws IOException
+    {
+        try
+        {
+            pending.acquire();
+        }
+        catch (InterruptedException ie)
+        {
+            Thread.currentThread().interrupt();
+            throw new IOException("Import interrupted");
+        }
+
+        workers.execute(() ->
+        {
+            try
+            {
+                this.register(chunk, firstLine, registeredDate, listener, report);
+            }
+            catch (RuntimeException e)
+            {
+                e.printStackTrace();
+                report.reject(firstLine, "chunk failed: " + e.getMessage());
+            }
+            finally
+            {
+                pending.release();
+            }
+        });
+    }
+
+    /**
+     * Validates and prepares the lines of a chunk, then commits the visitors prepared. Runs on a worker thread.
+     */
+    private void register(List<String> chunk, long firstLine, long registeredDate, ChunkListener listener,
+                          Report report)
+    {
+        ArrayList<String[]> rows = new ArrayList<>(chunk.size());
+        ArrayList<Long> rowLines = new ArrayList<>(chunk.size());
+        for (int i = 0; i < chunk.size(); i++)
+        {
+            String line = chunk.get(i);
+            if (line.trim().isEmpty())
+            {
+                continue;
+            }
+
+            report.lines.incrementAndGet();
+            String[] fields = split(line);
+            String problem = validate(fields);
+            if (problem != null)
+            {
+                report.malformed.incrementAndGet();
+                report.reject(firstLine + i, problem);
+                continue;
+            }
+            rows.add(fields);
+            rowLines.add(firstLine + i);
+        }
+
+        Visitor[] registered = this.visitorStorage.prepareVisitors(rows, registeredDate);
+        ArrayList<Visitor> committed = new ArrayList<>(registered.length);
+        for (int i = 0; i < registered.length; i++)
+        {
+            if (registered[i] == null)
+            {
+                report.duplicates.incrementAndGet();
+                report.reject(rowLines.get(i), "duplicate visitor");
+            }
+            else
+            {
+                committed.add(registered[i]);
+            }
+        }
+
+        if (!committed.isEmpty())
+        {
+            listener.committed(committed);
+        }
+        report.imported.addAndGet(committed.size());
+    }
+
+    /**
+     * Checks the fields of a line.
+     *
+     * @param fields - The fields of the line, or null if it could not be split.
+     * @return Why the line cannot be registered, or null if it can.
+     */
+    private static String validate(String[] fields)
+    {
+        if (fields == null)
+        {
+            return "unclosed quote";
+        }
+        if (fields.length != 4)
+        {
+            return "expected 4 fields, found " + fields.length;
+        }
+        for (String field : fields)
+        {
+            if (field.isEmpty())
+            {
+                return "empty field";
+            }
+            // The fields are sent back in responses, where these would break the protocol
+            if (field.indexOf(';') >= 0 || field.indexOf('{') >= 0 || field.indexOf('}') >= 0)
+            {
+                return "field contains ; { or }";
+            }
+        }
+
+        boolean digit = false;
+        for (int i = 0; i < fields[3].length(); i++)
+        {
+            char c = fields[3].charAt(i);
+            if (Character.isDigit(c))
+            {
+                digit = true;
+            }
+            else if ("+-(). ".indexOf(c) < 0)
+            {
+                return "invalid phone number";
+            }
+        }
+        return digit ? null : "invalid phone number";
+    }
+
+    /**
+     * Splits a CSV line into trimmed fields.
+     *
+     * @param line - The line to split.
+     * @return The fields, or null if a quoted field is never closed.
+     */
+    private static String[] split(String line)
+    {
+        ArrayList<String> fields = new ArrayList<>(4);
+        StringBuilder field = new StringBuilder();
+        boolean inQuotes = false;
+
+        for (int i = 0; i < line.length(); i++)
+        {
+            char c = line.charAt(i);
+            if (inQuotes)
+            {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"')
+                {
+                    field.append('"');
+                    i++;
+                }
+                else if (c == '"')
+                {
+                    inQuotes = false;
+                }
+                else
+                {
+                    field.append(c);
+                }
+            }
+            else if (c == '"')
+            {
+                inQuotes = true;
+            }
+            else if (c == ',')
+            {
+                fields.add(field.toString().trim());
+                field.setLength(0);
+            }
+            else
+            {
+                field.append(c);
+            }
+        }
+
+        if (inQuotes)
+        {
+            return null;
+        }
+        fields.add(field.toString().trim());
+        return fields.toArray(new String[0]);
+    }
+
+    /**
+     * Main method for testing
+     */
+    public static void main(String[] args) throws IOException
+    {
+        Path file = Files.createTempFile("visitors", ".csv");
+        Files.write(file, ("first,last,address,phone\n"
+                + "Ada,Lovelace,\"12 St James's Square, London\",555-0100\n"
+                + "Alan,Turing,Wilmslow,555-0101\n"
+                + "Ada,Lovelace,Marylebone,555-0102\n"
+                + "Grace,Hopper,Arlington,none\n").getBytes(StandardCharsets.UTF_8));
+
+        VisitorStorage visitorStorage = new VisitorStorage(null);
+        ArrayList<Visitor> visibleEarly = new ArrayList<>();
+        Report report = new VisitorImporter(visitorStorage, 2, 2).importFile(file, true, 0, visitors ->
+        {
+            for (Visitor visitor : visitors)
+            {
+                if (visitorStorage.getVisitor(visitor.getID()) != null)
+                {
+                    visibleEarly.add(visitor);
+                }
+            }
+            visitorStorage.publishVisitors(visitors);
+        });
+        Files.delete(file);
+        System.out.println(report);
+
+        // Test 1
+        if (report.getImported() == 2 && report.getDuplicates() == 1 && report.getMalformed() == 1)
+            System.out.println("PASSED Test - 1");
+        else
+            System.out.println("FAILED Test - 1: Expected 2 imported, 1 duplicate and 1 malformed");
+
+        // Test 2
+        if (visibleEarly.isEmpty())
+            System.out.println("PASSED Test - 2");
+        else
+            System.out.println("FAILED Test - 2: Expected visitors to be hidden until the listener publishes them");
+
+        // Test 3
+        if (visitorStorage.getVisitors().size() == 3)
+            System.out.println("PASSED Test - 3");
+        else
+            System.out.println("FAILED Test - 3: Expected the admin and 2 imported visitors once published");
+
+        // Test 4
+        if (visitorStorage.getVisitor(VisitorIdAllocator.FIRST_ID) != null
+                && visitorStorage.getVisitor(VisitorIdAllocator.FIRST_ID + 1) != null)
+            System.out.println("PASSED Test - 4");
+        else
+            System.out.println("FAILED Test - 4: Expected the duplicate not to use up a visitor ID");
+    }
+}
@@ -1,9 +1,12 @@
 package Visitors;
 
+import Library.DailyStatistics;
 import Library.Library;
 import Books.Book;
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Represents the library's saved visitors and visits. Provides methods to save, retrieve and query from all visitors
@@ -19,42 +22,90 @@ public class VisitorStorage implements java.io.Serializable
     // Not persisted in storage
     private transient Library library;
 
+    // Number of visitor locks, a power of two
+    private static final int LOCK_STRIPES = 64;
+
     // Registered visitors
-    private HashMap<Long, Visitor> visitors;
+    private ConcurrentHashMap<Long, Visitor> visitors;
+
+    // Hands out the IDs of newly registered visitors
+    private VisitorIdAllocator idAllocator;
 
     // Visits currently taking place in the library
-    private HashMap<Long, Visit> activeVisits;
+    private ConcurrentHashMap<Long, Visit> activeVisits;
 
-    // Full history of visits in the library
-    private ArrayList<Visit> visitHistory;
+    // Full history of finished visits in the library, partitioned by day with old days archived to disk
+    private VisitHistory visitHistory;
 
     // Full list of taken usernames of visitors
-    private HashMap<String, Visitor> usernames;
+    private ConcurrentHashMap<String, Visitor> usernames;
+
+    // IDs of registered visitors keyed by identity, for finding duplicate registrations without a scan
+    // Not persisted in storage, rebuilt when the storage is loaded
+    private transient ConcurrentHashMap<String, Long> identities;
+
+    // Holds an identity in the index while an ID is taken for it
+    private static final Long UNASSIGNED = 0L;
+
+    // Logins verified recently, so a terminal logging in again does not hash the password in full
+    // Not persisted in storage
+    private transient VerifiedSessions verifiedSessions;
+
+    // Striped locks guarding each visitor's checkouts and fines
+    private ReentrantLock[] visitorLocks;
 
     // Data file location
     private static String file = "files/VisitorStorage.ser";
 
+    // Directory archived days of visit history are kept in
+    private static String visitArchive = "files/visits";
+
+    // Number of days of visit history kept in memory
+    private static final int RESIDENT_VISIT_DAYS = 90;
+
     // Default admin user
     private Visitor admin;
 
+    // Registrations, visits and fines counted per day, kept in step with the visitors and visits
+    // Not persisted in storage, rebuilt when the storage is loaded
+    private transient DailyStatistics statistics;
+
+    // Counters in the statistics
+    private static final int REGISTRATIONS = 0;
+    private static final int VISITS = 1;
+    private static final int VISIT_MILLIS = 2;
+    private static final int FINES_CHARGED = 3;
+    private static final int FINES_PAID = 4;
+    private static final int STATISTICS_FIELDS = 5;
+
     /**
      * Default constructor. Initializes with empty visitor and visit hashes.
      */
     public VisitorStorage(Library library)
     {
         this.library = library;
-        this.visitors = new HashMap<>();
-        this.activeVisits = new HashMap<>();
-        this.visitHistory = new ArrayList<>();
-        this.usernames = new HashMap<>();
+        this.visitors = new ConcurrentHashMap<>();
+        this.idAllocator = new SequentialIdAllocator();
+        this.activeVisits = new ConcurrentHashMap<>();
+        this.visitHistory = new VisitHistory(new File(visitArchive), RESIDENT_VISIT_DAYS);
+        this.usernames = new ConcurrentHashMap<>();
+        this.visitorLocks = new ReentrantLock[LOCK_STRIPES];
+        for (int i = 0; i < LOCK_STRIPES; i++)
+        {
+            this.visitorLocks[i] = new ReentrantLock();
+        }
 
         // Create admin/default user
         this.admin = new Visitor("admin", "admin", "GCCIS Building 70", "5555555555");
         this.admin.createAccount("admin", "admin", "Employee");
-        this.admin.setID(9000000000L);
+        this.admin.setID(VisitorIdAllocator.ADMIN_ID);
         this.usernames.put("admin", this.admin);
 
         this.visitors.put(admin.getID(), admin);
+        this.identities = new ConcurrentHashMap<>();
+        this.identities.put(admin.getIdentityKey(), admin.getID());
+        this.verifiedSessions = new VerifiedSessions();
+        this.statistics = new DailyStatistics(STATISTICS_FIELDS);
     }
 
     /**
@@ -68,46 +119,177 @@ public class VisitorStorage implements java.io.Serializable
         return this.visitors.get(ID);
     }
 
+    /**
+     * Gets the lock guarding a visitor's checkouts and fines. Visitors share a fixed set of locks, so operations on
+     * different visitors rarely wait on each other while operations on the same visitor are always serialized.
+     *
+     * @param visitorID - The ID of the visitor.
+     * @return The lock for the visitor.
+     */
+    public ReentrantLock getVisitorLock(Long visitorID)
+    {
+        int hash = visitorID == null ? 0 : Long.hashCode(visitorID);
+        hash ^= hash >>> 16;
+        return this.visitorLocks[hash & (LOCK_STRIPES - 1)];
+    }
+
     /**
      * Description
      *
      * @return
      */
-    public HashMap<String, Visitor> getUsernames()
+    public Map<String, Visitor> getUsernames()
     {
         return this.usernames;
     }
 
     /**
-     * Registers a new visitor in the system. The visitor is added to the hash and saved to a text file at shutdown.
-     * Registration assigns the registered visitor a unique ID for storage.
+     * Prepares the registration of a new visitor in the system. Registration assigns the visitor a unique ID and claims
+     * its name, but the visitor is not stored until it is published with publishVisitor(), so it can be journaled
+     * before anything else in the library can see it.
      *
      * @param firstName - The first name of the visitor to be registered
      * @param lastName - The last name of the visitor to be registered.
      * @param address - The address of the visitor to be registered.
      * @param phoneNumber - The phone number of the visitor to be registered.
-     * @return The newly registered visitor.
+     * @return The visitor to publish, or null if the visitor was already registered.
      */
-    public Visitor registerVisitor(String firstName, String lastName, String address, String phoneNumber)
+    public Visitor prepareVisitor(String firstName, String lastName, String address, String phoneNumber)
     {
-        // Generate the new visitor
-        Visitor visitor = new Visitor(firstName, lastName, address, phoneNumber);
+        // The name is claimed before an ID is taken, so a duplicate registration does not use up an ID
+        String identity = Visitor.identityKey(firstName, lastName);
+        if (this.identities.putIfAbsent(identity, UNASSIGNED) != null) { return null; }
+
+        long newKey = this.nextId();
+        this.identities.put(identity, newKey);
+        return this.createVisitor(newKey, firstName, lastName, address, phoneNumber, this.library.getTime());
+    }
 
+    /**
+     * Registers a new visitor in the system under a known ID and registration date. Used when replaying the journal,
+     * where the visitor has to come back exactly as it was first registered.
+     *
+     * @param id - The ID of the visitor to be registered.
+     * @param firstName - The first name of the visitor to be registered
+     * @param lastName - The last name of the visitor to be registered.
+     * @param address - The address of the visitor to be registered.
+     * @param phoneNumber - The phone number of the visitor to be registered.
+     * @param registeredDate - The date of registration.
+     * @return The newly registered visitor, or null if the visitor was already registered.
+     */
+    public Visitor registerVisitor(Long id, String firstName, String lastName, String address,
+                                                String phoneNumber, long registeredDate)
+    {
         // Check if visitor is already registered.
         // Registration is aborted if visitor already exists.
-        if (this.visitors.containsValue(visitor)) { return null; }
+        if (this.identities.putIfAbsent(Visitor.identityKey(firstName, lastName), id) != null) { return null; }
 
-        // Generate a random visitor ID
-        Long newKey = (long) Math.floor(Math.random() * 9_000_000_000L) + 1_000_000_000L;
-
-        // Set the visitor's id, registered date and store
-        visitor.register(newKey, this.library.getTime());
-        this.visitors.put(newKey, visitor);
+        Visitor visitor = this.createVisitor(id, firstName, lastName, address, phoneNumber, registeredDate);
+        this.publishVisitor(visitor);
+        return visitor;
+    }
 
-        // Return the new visitor
+    /**
+     * Helper method for the registration methods. Creates a visitor whose name has been claimed, without storing it.
+     */
+    private Visitor createVisitor(long id, String firstName, String lastName, String address, String phoneNumber,
+                                  long registeredDate)
+    {
+        // Generate the new visitor and set its id and registered date
+        Visitor visitor = new Visitor(firstName, lastName, address, phoneNumber);
+        visitor.register(id, registeredDate);
         return visitor;
     }
 
+    /**
+     * Helper method for the registration methods. Takes the next ID from the allocator, skipping any taken before the
+     * allocator was in use.
+     */
+    private long nextId()
+    {
+        long id;
+        do
+        {
+            id = this.idAllocator.next();
+        }
+        while (this.visitors.containsKey(id));
+        return id;
+    }
+
+    /**
+     * Stores a prepared visitor, after which it can be looked up, log in and borrow books.
+     *
+     * @param visitor - A visitor returned by prepareVisitor() or prepareVisitors().
+     */
+    public void publishVisitor(Visitor visitor)
+    {
+        this.visitors.put(visitor.getID(), visitor);
+        this.idAllocator.reserve(visitor.getID());
+        this.statistics.add(REGISTRATIONS, visitor.getRegisteredDate(), 1);
+    }
+
+    /**
+     * Prepares the registration of a batch of visitors at once, as for a bulk import. Their IDs are taken from the
+     * allocator in a single batch, and each visitor is then prepared the same way as by prepareVisitor(). None of them
+     * are stored until they are published with publishVisitors(). Safe to call from several threads at once.
+     *
+     * @param rows - The first name, last name, address and phone number of each visitor.
+     * @param registeredDate - The date of registration.
+     * @return The visitors to publish, in the same order as the rows, with null for a visitor who was already
+     *         registered.
+     */
+    public Visitor[] prepareVisitors(List<String[]> rows, long registeredDate)
+    {
+        // Claim every name first, so IDs are only taken for the visitors that are not duplicates
+        String[] identities = new String[rows.size()];
+        int claimed = 0;
+        for (int i = 0; i < rows.size(); i++)
+        {
+            String identity = Visitor.identityKey(rows.get(i)[0], rows.get(i)[1]);
+            if (this.identities.putIfAbsent(identity, UNASSIGNED) == null)
+            {
+                identities[i] = identity;
+                claimed++;
+            }
+        }
+
+        long[] ids = this.idAllocator.next(claimed);
+        Visitor[] prepared = new Visitor[rows.size()];
+        int next = 0;
+        for (int i = 0; i < rows.size(); i++)
+        {
+            if (identities[i] == null)
+            {
+                continue;
+            }
+
+            // Skip any ID taken before the allocator was in use
+            long id = ids[next++];
+            if (this.visitors.containsKey(id))
+            {
+                id = this.nextId();
+            }
+            this.identities.put(identities[i], id);
+
+            String[] row = rows.get(i);
+            prepared[i] = this.createVisitor(id, row[0], row[1], row[2], row[3], registeredDate);
+        }
+        return prepared;
+    }
+
+    /**
+     * Stores a batch of prepared visitors.
+     *
+     * @param visitors - Visitors returned by prepareVisitors().
+     */
+    public void publishVisitors(List<Visitor> visitors)
+    {
+        for (Visitor visitor : visitors)
+        {
+            this.publishVisitor(visitor);
+        }
+    }
+
     /**
      * Description
      *
@@ -129,29 +311,57 @@ public class VisitorStorage implements java.io.Serializable
      * This adds a username to the system so that someone else cant take it
      * @param username - the username
      * @param visitorID - the visitorID
+     * @return True if the username was free and is now taken, false if someone else already took it.
      */
-    public void addTakenUsername(String username, Long visitorID)
+    public boolean addTakenUsername(String username, Long visitorID)
     {
-        this.usernames.put(username, this.getVisitor(visitorID));
+        return this.usernames.putIfAbsent(username, this.getVisitor(visitorID)) == null;
     }
 
     /**
-     * The login method for the library
+     * The login method for the library. The password is checked against the account's hash, unless the same client
+     * logged in with it recently. A username that does not exist takes as long to reject as a wrong password.
+     *
+     * @param clientID - the client logging in
      * @param username - the username of the visitor
      * @param password - the password of the visitor
-     * @return
+     * @return True if the username and password match an account.
      */
-    public boolean login(String username, String password)
+    public boolean login(Long clientID, String username, String password)
     {
-        if (this.usernames.containsKey(username))
+        Visitor visitor = this.usernames.get(username);
+        Credential credential = visitor == null ? null : visitor.getCredential();
+        if (credential == null)
         {
-            if (this.usernames.get(username).getPassword().equals(password))
-                return true;
-            else
-                return false;
+            return Credential.verifyMissing(password);
         }
-        else
+
+        if (this.verifiedSessions.check(clientID, username, credential, password))
+        {
+            return true;
+        }
+        if (!credential.verify(password))
+        {
             return false;
+        }
+
+        if (credential.needsRehash())
+        {
+            credential = Credential.create(password);
+            visitor.setCredential(credential);
+        }
+        this.verifiedSessions.remember(clientID, username, credential, password);
+        return true;
+    }
+
+    /**
+     * Forgets the logins a client verified, so it has to be checked in full the next time it logs in.
+     *
+     * @param clientID - the client to forget
+     */
+    public void forgetLogins(Long clientID)
+    {
+        this.verifiedSessions.forget(clientID);
     }
 
     public Visitor getVisitorByUsername(String username)
@@ -167,15 +377,12 @@ public class VisitorStorage implements java.io.Serializable
      */
     public Visit startVisit(Long visitorID)
     {
-        // Check if visitor is already visiting the library
-        if (this.activeVisits.containsKey(visitorID))
+        // Create a new visit and add it to active, unless visitor is already visiting the library
+        Visit visit = new Visit(this.library.getTime(), visitorID);
+        if (this.activeVisits.putIfAbsent(visitorID, visit) != null)
         {
             return null;
         }
-
-        // Create a new visit and add it to active
-        Visit visit = new Visit(this.library.getTime(), visitorID);
-        this.activeVisits.put(visitorID, visit);
         return visit;
     }
 
@@ -187,55 +394,44 @@ public class VisitorStorage implements java.io.Serializable
      */
     public Visit endVisit(Long visitorID)
     {
-        // Check that visitor is actually visiting
-        if (!this.activeVisits.containsKey(visitorID))
+        // Take the visit out of active visits, checking that visitor is actually visiting
+        Visit visit = this.activeVisits.remove(visitorID);
+        if (visit == null)
         {
             return null;
         }
 
-        // Find the visit for the given visitor ID
-        Visit visit = this.activeVisits.get(visitorID);
-
-        // Add in end time to visit
+        // Add in end time to visit and move it to visit history
         visit.end(this.library.getTime());
-
-        // Move from active visits to visit history
-        this.activeVisits.remove(visit.getVisitorID());
-        this.visitHistory.add(visit);
+        long start = visit.getStartDateTime();
+        long end = visit.getEndDateTime();
+        this.visitHistory.add(start, end, visit.getVisitorID());
+        this.countVisit(start, end);
 
         return visit;
     }
 
     /**
-     * Gets the total outstanding balance of visitor fines.
+     * Adds a visit that was finished before the library was restarted, as when replaying the journal. If the visit was
+     * still active when the snapshot was taken, it is ended.
      *
-     * @return The total fine amount.
+     * @param start - When the visit started, in milliseconds since the epoch.
+     * @param end - When the visit ended, in milliseconds since the epoch.
+     * @param visitorID - The ID of the visitor.
      */
-    private int getTotalUnpaidFines(int days)
+    public void restoreVisit(long start, long end, Long visitorID)
     {
-        int totalBalance = 0;
-        for (Visitor visitor: this.getFilteredVisitors(days))
+        Visit active = this.activeVisits.get(visitorID);
+        if (active != null && active.getStartDateTime() == start)
         {
-            totalBalance += visitor.getFinesUnpaid(days);
+            this.activeVisits.remove(visitorID);
         }
 
-        return totalBalance;
-    }
-
-    /**
-     * Gets the total amount of fines paid by visitors.
-     *
-     * @return The total paid fine amount.
-     */
-    private int getTotalPaidFines(int days)
-    {
-        int totalBalance = 0;
-        for (Visitor visitor: this.getFilteredVisitors(days))
+        // Visits from a day that was archived are already counted in its summary
+        if (this.visitHistory.restore(start, end, visitorID))
         {
-            totalBalance += visitor.getFinesPaid(days);
+            this.countVisit(start, end);
         }
-
-        return totalBalance;
     }
 
     /**
@@ -243,34 +439,40 @@ public class VisitorStorage implements java.io.Serializable
      *
      * @param visitorID - The ID of the visitor.
      * @param amount - The amount of the fine that is being paid.
+     * @param datePaid - The date of the payment.
+     * @return True if the payment was made, false otherwise.
      */
-    public void payFine(Long visitorID, int amount)
+    public boolean payFine(Long visitorID, int amount, long datePaid)
     {
         Visitor visitor = this.getVisitor(visitorID);
 
         // Check for invalid visitor ID
-        if (visitor == null) { return; }
+        if (visitor == null) { return false; }
 
         // Check for invalid amount
-        if (amount < 0 || amount > visitor.getBalance()) { return; }
+        if (amount < 0 || amount > visitor.getBalance()) { return false; }
 
-        visitor.payFine(amount, this.library.getTime());
+        visitor.payFine(amount, datePaid);
+        this.statistics.add(FINES_PAID, datePaid, amount);
+        return true;
     }
 
     /**
      * Undos the paying of a fine
      * @param visitorID - the visitor ID
      * @param amount - the amount of the fine
+     * @param date - the date the payment is undone
+     * @return True if the payment was undone, false otherwise.
      */
-
-    public void undoPayFine(Long visitorID, int amount)
+    public boolean undoPayFine(Long visitorID, int amount, long date)
     {
         Visitor v = this.getVisitor(visitorID);
 
-        if (v == null) { return; }
-
-        v.undoPayFine(amount, this.library.getTime());
+        if (v == null) { return false; }
 
+        PaidFine payment = v.undoPayFine(amount, date);
+        this.statistics.add(FINES_PAID, payment.getDatePaid(), -payment.getAmount());
+        return true;
     }
 
     /**
@@ -278,103 +480,107 @@ public class VisitorStorage implements java.io.Serializable
      *
      * @param visitorID - id of visitor returning books
      * @param books - books to be returned
+     * @param dateReturned - the date of the return
      */
-    public double returnBooks(Long visitorID, ArrayList<Book> books)
+    public double returnBooks(Long visitorID, ArrayList<Book> books, long dateReturned)
     {
         Visitor visitor = this.getVisitor(visitorID);
-        return visitor.returnBooks(books, this.library.getTime());
+        double fines = visitor.returnBooks(books, dateReturned);
+        if (fines > 0)
+        {
+            this.statistics.add(FINES_CHARGED, dateReturned, (long) fines);
+        }
+        return fines;
     }
 
     /**
-     * Helper method for report generation.
-     * Filters the visitor list by registered date for a given number of days
-     * in the past.
+     * Adds a finished visit to the statistics, on the day it started.
      *
-     * @param days - number of days in the past to collect data
-     * @return list of filtered visitors
+     * @param start - When the visit started, in milliseconds since the epoch.
+     * @param end - When the visit ended, in milliseconds since the epoch.
      */
-    private ArrayList<Visitor> getFilteredVisitors(int days)
+    private void countVisit(long start, long end)
     {
-        if (days == 0)
+        this.statistics.add(VISITS, start, 1);
+        this.statistics.add(VISIT_MILLIS, start, end - start);
+    }
+
+    /**
+     * Indexes every registered visitor by identity. Used when the storage is loaded, since the index is not persisted.
+     */
+    private void indexIdentities()
+    {
+        this.identities = new ConcurrentHashMap<>();
+        for (Visitor visitor : this.visitors.values())
         {
-            return new ArrayList<>(this.visitors.values());
+            this.identities.put(visitor.getIdentityKey(), visitor.getID());
         }
-        ArrayList<Visitor> filteredVisitors = new ArrayList<>();
+    }
 
-        for (Visitor visitor: this.visitors.values())
+    /**
+     * Adds every registration, finished visit and fine to fresh statistics. Used when the storage is loaded, since the
+     * statistics are not persisted. Archived days of visit history are counted from their summaries, so loading does
+     * not read the archive.
+     */
+    private void countEvents()
+    {
+        this.statistics = new DailyStatistics(STATISTICS_FIELDS);
+        for (Visitor visitor : this.visitors.values())
         {
-            // Calculate the date range
-            Calendar startDate = this.library.getTime();
-            startDate.add(Calendar.DAY_OF_YEAR, -days);
-
-            if (visitor.getRegisteredDate().after(startDate))
+            this.statistics.add(REGISTRATIONS, visitor.getRegisteredDate(), 1);
+            for (UnpaidFine fine : visitor.getUnpaidFines())
+            {
+                this.statistics.add(FINES_CHARGED, fine.getDateAccumulated(), fine.getAmount());
+            }
+            for (PaidFine fine : visitor.getPaidFines())
             {
-                filteredVisitors.add(visitor);
+                this.statistics.add(FINES_PAID, fine.getDatePaid(), fine.getAmount());
             }
         }
 
-        return filteredVisitors;
+        this.visitHistory.forEachArchivedDay((day, visits, visitMillis) ->
+        {
+            this.statistics.addToDay(VISITS, day, visits);
+            this.statistics.addToDay(VISIT_MILLIS, day, visitMillis);
+        });
+        this.visitHistory.forEachResident((start, end, visitorID) -> this.countVisit(start, end));
     }
 
     /**
      * Helper method for report generation.
      * Calculates the number of visitors registered in a given time frame.
      *
+     * @param now - the current library time
      * @param days - number of days in the past to collect data
      * @return number of visitors registered
      */
-    private int getTotalVisitors(int days)
+    private int getTotalVisitors(long now, int days)
     {
-        return this.getFilteredVisitors(days).size();
+        if (days == 0)
+        {
+            return this.visitors.size();
+        }
+        return (int) this.statistics.sum(REGISTRATIONS, now, days);
     }
 
     /**
      * Helper method for report generation.
      * Calculates the average length of stay at the library.
      *
+     * @param now - the current library time
      * @param days - number of days in the past to collect data
      * @return average visit time (hh:mm:ss)
      */
-    private String getAverageVisit(int days)
+    private String getAverageVisit(long now, int days)
     {
-        // Holds the visits filtered by start date
-        ArrayList<Visit> filteredVisits = new ArrayList<>();
-
-        if (days == 0)
-        {
-            // Report on all data
-            filteredVisits = this.visitHistory;
-        }
-        else
-        {
-            // Calculate the date range
-            Calendar startDate = this.library.getTime();
-            startDate.add(Calendar.DAY_OF_YEAR, -days);
-
-            for (Visit visit: this.visitHistory)
-            {
-                if (visit.getStartDateTime().after(startDate))
-                {
-                    filteredVisits.add(visit);
-                }
-            }
-        }
-
-        int totalVisits = filteredVisits.size();
+        long totalVisits = this.statistics.sum(VISITS, now, days);
 
         // Prevent division by 0
         if (totalVisits == 0) { totalVisits = 1; }
 
         // Calculate the average length of stay
         // Total visit time (milliseconds)
-        long totalTime = 0;
-
-        for (Visit visit : filteredVisits)
-        {
-            Calendar start = visit.getStartDateTime();
-            Calendar end = visit.getEndDateTime();
-            totalTime += end.getTimeInMillis() - start.getTimeInMillis();
-        }
+        long totalTime = this.statistics.sum(VISIT_MILLIS, now, days);
 
         // Average length of stay, in milliseconds
         long milis = totalTime / totalVisits;
@@ -402,17 +608,19 @@ public class VisitorStorage implements java.io.Serializable
         // String to hold the report data
         String reportString;
 
+        long now = days == 0 ? 0 : this.library.getTime();
+
         // Get total # visitors
-        int totalVisitors = this.getTotalVisitors(days);
+        int totalVisitors = this.getTotalVisitors(now, days);
 
         // Get average length of visits
-        String avgVisitTime = this.getAverageVisit(days);
+        String avgVisitTime = this.getAverageVisit(now, days);
 
         // Get total fines collected
-        int totalFinesPaid = this.getTotalPaidFines(days);
+        int totalFinesPaid = (int) this.statistics.sum(FINES_PAID, now, days);
 
         // Get total outstanding fines
-        int totalFinesOutstanding = this.getTotalUnpaidFines(days) - totalFinesPaid;
+        int totalFinesOutstanding = (int) this.statistics.sum(FINES_CHARGED, now, days) - totalFinesPaid;
 
         // Add data to the report and return
         reportString = "Number of Visitors: " + totalVisitors + "\n"
@@ -424,7 +632,7 @@ public class VisitorStorage implements java.io.Serializable
     }
 
     /**
-     * Sets the library object for this VisitorStorage.
+     * Sets the library object for this VisitorStorage and rebuilds the identity index and statistics.
      * Used upon deserialization to link with Library's TimeClock.
      *
      * @param library - Library object to link with the VisitorStorage.
@@ -432,17 +640,110 @@ public class VisitorStorage implements java.io.Serializable
     public void setLibrary(Library library)
     {
         this.library = library;
+        this.verifiedSessions = new VerifiedSessions();
+        if (this.idAllocator == null)
+        {
+            // Saved before visitor IDs were allocated
+            this.idAllocator = new SequentialIdAllocator();
+        }
+        this.indexIdentities();
+        this.countEvents();
+    }
+
+    /**
+     * Gets every registered visitor, keyed by ID.
+     *
+     * @return The registered visitors.
+     */
+    Map<Long, Visitor> getVisitors()
+    {
+        return this.visitors;
+    }
+
+    /**
+     * Gets the allocator that hands out the IDs of new visitors.
+     *
+     * @return The ID allocator.
+     */
+    public VisitorIdAllocator getIdAllocator()
+    {
+        return this.idAllocator;
+    }
+
+    /**
+     * Replaces the allocator that hands out the IDs of new visitors, as when the storage is loaded from a snapshot.
+     *
+     * @param idAllocator - The new ID allocator.
+     */
+    public void setIdAllocator(VisitorIdAllocator idAllocator)
+    {
+        this.idAllocator = idAllocator;
+    }
+
+    /**
+     * Gets the visits currently taking place, keyed by visitor ID.
+     *
+     * @return The active visits.
+     */
+    Map<Long, Visit> getActiveVisits()
+    {
+        return this.activeVisits;
+    }
+
+    /**
+     * Gets the history of finished visits.
+     *
+     * @return The visit history.
+     */
+    VisitHistory getVisitHistory()
+    {
+        return this.visitHistory;
+    }
+
+    /**
+     * Replaces the contents of the storage with visitors and visits loaded from a snapshot. Taken usernames, the admin
+     * user, the identity index and the statistics are rebuilt from the visitors and visits. The visit history is
+     * restored into getVisitHistory() beforehand.
+     *
+     * @param visitors - The registered visitors, keyed by ID.
+     * @param activeVisits - The active visits, keyed by visitor ID.
+     */
+    void restore(ConcurrentHashMap<Long, Visitor> visitors, ConcurrentHashMap<Long, Visit> activeVisits)
+    {
+        this.visitors = visitors;
+        this.activeVisits = activeVisits;
+        this.usernames = new ConcurrentHashMap<>();
+
+        for (Visitor visitor : visitors.values())
+        {
+            if (visitor.getUsername() != null)
+            {
+                this.usernames.put(visitor.getUsername(), visitor);
+            }
+        }
+
+        this.admin = visitors.get(VisitorIdAllocator.ADMIN_ID);
+        this.indexIdentities();
+        this.countEvents();
     }
 
     /**
      * Ends all active visits. Visits are automatically put into visit history.
+     *
+     * @return The visits that were ended.
      */
-    public void endAllVisits()
+    public List<Visit> endAllVisits()
     {
+        ArrayList<Visit> ended = new ArrayList<>();
         for (Visit visit : this.activeVisits.values())
         {
-            this.endVisit(visit.getVisitorID());
+            Visit finished = this.endVisit(visit.getVisitorID());
+            if (finished != null)
+            {
+                ended.add(finished);
+            }
         }
+        return ended;
     }
     /**
      * Serialize the entire visitor storage and save it to a text file. Since this only happens at shutdown, all active
@@ -0,0 +1,320 @@
+package Visitors;
+
+import Books.Book;
+import Books.BookStorageCodec;
+import Library.Library;
+import Library.SnapshotReader;
+import Library.SnapshotWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Encodes a VisitorStorage as columns of a binary snapshot. Visitors are stored one column per field, and each
+ * visitor's checkouts and fines are flattened into shared columns preceded by a column of per-visitor counts. Checked
+ * out books are stored by ISBN and resolved against the book storage on load, so a visitor's checkout and the library's
+ * copy count refer to the same Book.
+ *
+ * @author Kyler Freas
+ */
+public class VisitorStorageCodec
+{
+    /**
+     * Writes the visitors and visits of a visitor storage.
+     *
+     * @param visitorStorage - The visitor storage to write.
+     * @param out - The snapshot being written.
+     */
+    public static void write(VisitorStorage visitorStorage, SnapshotWriter out) throws IOException
+    {
+        ArrayList<Visitor> visitors = new ArrayList<>(visitorStorage.getVisitors().values());
+        int count = visitors.size();
+
+        long[] ids = new long[count];
+        String[] firstNames = new String[count];
+        String[] lastNames = new String[count];
+        String[] addresses = new String[count];
+        String[] phoneNumbers = new String[count];
+        String[] usernames = new String[count];
+        String[] passwords = new String[count];
+        String[] roles = new String[count];
+        long[] registeredDates = new long[count];
+        int[] balances = new int[count];
+
+        int[] checkOutCounts = new int[count];
+        ArrayList<String> checkOutIsbns = new ArrayList<>();
+        ArrayList<Long> borrowDates = new ArrayList<>();
+
+        int[] unpaidCounts = new int[count];
+        ArrayList<Integer> unpaidAmounts = new ArrayList<>();
+        ArrayList<Long> unpaidDates = new ArrayList<>();
+
+        int[] paidCounts = new int[count];
+        ArrayList<Integer> paidAmounts = new ArrayList<>();
+        ArrayList<Long> paidDates = new ArrayList<>();
+
+        for (int i = 0; i < count; i++)
+        {
+            Visitor v = visitors.get(i);
+            ids[i] = v.getID();
+            firstNames[i] = v.getFirstName();
+            lastNames[i] = v.getLastName();
+            addresses[i] = v.getAddress();
+            phoneNumbers[i] = v.getPhoneNumber();
+            usernames[i] = v.getUsername();
+            passwords[i] = v.getCredential() == null ? null : v.getCredential().encode();
+            roles[i] = v.getRole();
+            registeredDates[i] = v.getRegisteredDate();
+            balances[i] = v.getBalance();
+
+            checkOutCounts[i] = v.getCheckOutCount();
+            for (CheckOut checkout : v.getCheckOut())
+            {
+                checkOutIsbns.add(checkout.getBook().getIsbn());
+                borrowDates.add(checkout.getBorrowDate());
+            }
+
+            unpaidCounts[i] = v.getUnpaidFines().size();
+            for (UnpaidFine fine : v.getUnpaidFines())
+            {
+                unpaidAmounts.add(fine.getAmount());
+                unpaidDates.add(fine.getDateAccumulated());
+            }
+
+            paidCounts[i] = v.getPaidFines().size();
+            for (PaidFine fine : v.getPaidFines())
+            {
+                paidAmounts.add(fine.getAmount());
+                paidDates.add(fine.getDatePaid());
+            }
+        }
+
+        out.writeLongs(ids);
+        out.writeStrings(firstNames);
+        out.writeStrings(lastNames);
+        out.writeStrings(addresses);
+        out.writeStrings(phoneNumbers);
+        out.writeStrings(usernames);
+        out.writeStrings(passwords);
+        out.writeStrings(roles);
+        out.writeLongs(registeredDates);
+        out.writeInts(balances);
+
+        out.writeInts(checkOutCounts);
+        out.writeStrings(checkOutIsbns.toArray(new String[0]));
+        out.writeLongs(toLongs(borrowDates));
+
+        out.writeInts(unpaidCounts);
+        out.writeInts(toInts(unpaidAmounts));
+        out.writeLongs(toLongs(unpaidDates));
+
+        out.writeInts(paidCounts);
+        out.writeInts(toInts(paidAmounts));
+        out.writeLongs(toLongs(paidDates));
+
+        writeVisits(new ArrayList<>(visitorStorage.getActiveVisits().values()), out);
+        writeHistory(visitorStorage.getVisitHistory(), out);
+        out.writeLongs(visitorStorage.getIdAllocator().getCounters());
+    }
+
+    /**
+     * Reads a visitor storage written by write().
+     *
+     * @param in - The snapshot being read.
+     * @param library - The library the storage belongs to.
+     * @param books - The books owned by the library, keyed by ISBN.
+     * @return The visitor storage.
+     */
+    public static VisitorStorage read(SnapshotReader in, Library library, Map<String, Book> books)
+    {
+        long[] ids = in.readLongs();
+        String[] firstNames = in.readStrings();
+        String[] lastNames = in.readStrings();
+        String[] addresses = in.readStrings();
+        String[] phoneNumbers = in.readStrings();
+        String[] usernames = in.readStrings();
+        String[] passwords = in.readStrings();
+        String[] roles = in.readStrings();
+        long[] registeredDates = in.readLongs();
+        int[] balances = in.readInts();
+
+        int[] checkOutCounts = in.readInts();
+        String[] checkOutIsbns = in.readStrings();
+        long[] borrowDates = in.readLongs();
+
+        int[] unpaidCounts = in.readInts();
+        int[] unpaidAmounts = in.readInts();
+        long[] unpaidDates = in.readLongs();
+
+        int[] paidCounts = in.readInts();
+        int[] paidAmounts = in.readInts();
+        long[] paidDates = in.readLongs();
+
+        ConcurrentHashMap<Long, Visitor> visitors = new ConcurrentHashMap<>(ids.length * 2);
+        int checkOut = 0;
+        int unpaid = 0;
+        int paid = 0;
+
+        for (int i = 0; i < ids.length; i++)
+        {
+            Visitor v = new Visitor(firstNames[i], lastNames[i], addresses[i], phoneNumbers[i]);
+            v.register(ids[i], registeredDates[i]);
+            if (usernames[i] != null)
+            {
+                v.createAccount(usernames[i], Credential.fromStored(passwords[i]), roles[i]);
+            }
+
+            ArrayList<CheckOut> checkOuts = new ArrayList<>(checkOutCounts[i]);
+            for (int j = 0; j < checkOutCounts[i]; j++, checkOut++)
+            {
+                Book book = BookStorageCodec.resolve(books, checkOutIsbns[checkOut]);
+                checkOuts.add(new CheckOut(book, borrowDates[checkOut]));
+            }
+
+            ArrayList<UnpaidFine> unpaidFines = new ArrayList<>(unpaidCounts[i]);
+            for (int j = 0; j < unpaidCounts[i]; j++, unpaid++)
+            {
+                unpaidFines.add(new UnpaidFine(unpaidAmounts[unpaid], unpaidDates[unpaid]));
+            }
+
+            ArrayList<PaidFine> paidFines = new ArrayList<>(paidCounts[i]);
+            for (int j = 0; j < paidCounts[i]; j++, paid++)
+            {
+                paidFines.add(new PaidFine(paidAmounts[paid], paidDates[paid]));
+            }
+
+            v.restore(checkOuts, unpaidFines, paidFines, balances[i]);
+            visitors.put(v.getID(), v);
+        }
+
+        ConcurrentHashMap<Long, Visit> activeVisits = new ConcurrentHashMap<>();
+        for (Visit visit : readVisits(in))
+        {
+            activeVisits.put(visit.getVisitorID(), visit);
+        }
+
+        VisitorStorage visitorStorage = new VisitorStorage(library);
+        readHistory(in, visitorStorage.getVisitHistory());
+        if (in.getVersion() >= 2)
+        {
+            visitorStorage.setIdAllocator(VisitorIdAllocator.fromCounters(in.readLongs()));
+        }
+        visitorStorage.restore(visitors, activeVisits);
+        return visitorStorage;
+    }
+
+    /**
+     * Writes a list of visits as start, end and visitor ID columns.
+     *
+     * @param visits - The visits to write.
+     * @param out - The snapshot being written.
+     */
+    private static void writeVisits(List<Visit> visits, SnapshotWriter out) throws IOException
+    {
+        long[] starts = new long[visits.size()];
+        long[] ends = new long[visits.size()];
+        long[] visitorIDs = new long[visits.size()];
+
+        for (int i = 0; i < visits.size(); i++)
+        {
+            Visit visit = visits.get(i);
+            starts[i] = visit.getStartDateTime();
+            ends[i] = visit.getEndDateTime();
+            visitorIDs[i] = visit.getVisitorID();
+        }
+
+        out.writeLongs(starts);
+        out.writeLongs(ends);
+        out.writeLongs(visitorIDs);
+    }
+
+    /**
+     * Reads a list of visits written by writeVisits().
+     *
+     * @param in - The snapshot being read.
+     * @return The visits.
+     */
+    private static ArrayList<Visit> readVisits(SnapshotReader in)
+    {
+        long[] starts = in.readLongs();
+        long[] ends = in.readLongs();
+        long[] visitorIDs = in.readLongs();
+
+        ArrayList<Visit> visits = new ArrayList<>(starts.length);
+        for (int i = 0; i < starts.length; i++)
+        {
+            Visit visit = new Visit(starts[i], visitorIDs[i]);
+            visit.end(ends[i]);
+            visits.add(visit);
+        }
+        return visits;
+    }
+
+    /**
+     * Writes the visits of a visit history still held in memory as start, end and visitor ID columns. Archived days
+     * are already on disk and are left out.
+     *
+     * @param history - The visit history to write.
+     * @param out - The snapshot being written.
+     */
+    private static void writeHistory(VisitHistory history, SnapshotWriter out) throws IOException
+    {
+        int size = history.residentSize();
+        long[] starts = new long[size];
+        long[] ends = new long[size];
+        long[] visitorIDs = new long[size];
+        int[] i = {0};
+
+        history.forEachResident((start, end, visitorID) ->
+        {
+            starts[i[0]] = start;
+            ends[i[0]] = end;
+            visitorIDs[i[0]] = visitorID;
+            i[0]++;
+        });
+
+        out.writeLongs(starts);
+        out.writeLongs(ends);
+        out.writeLongs(visitorIDs);
+    }
+
+    /**
+     * Reads visits written by writeHistory() into a visit history.
+     *
+     * @param in - The snapshot being read.
+     * @param history - The visit history to restore the visits into.
+     */
+    private static void readHistory(SnapshotReader in, VisitHistory history)
+    {
+        long[] starts = in.readLongs();
+        long[] ends = in.readLongs();
+        long[] visitorIDs = in.readLongs();
+
+        for (int i = 0; i < starts.length; i++)
+        {
+            history.restore(starts[i], ends[i], visitorIDs[i]);
+        }
+    }
+
+    private static long[] toLongs(ArrayList<Long> values)
+    {
+        long[] array = new long[values.size()];
+        for (int i = 0; i < array.length; i++)
+        {
+            array[i] = values.get(i);
+        }
+        return array;
+    }
+
+    private static int[] toInts(ArrayList<Integer> values)
+    {
+        int[] array = new int[values.size()];
+        for (int i = 0; i < array.length; i++)
+        {
+            array[i] = values.get(i);
+        }
+        return array;
+    }
+}
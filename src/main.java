@@ -1,7 +1,11 @@
 import UIS.GUI;
+import UIS.LBMSServer;
 import UIS.PTUI;
+import Library.Library;
+import Visitors.VisitorImporter;
 
 import javax.swing.*;
+import java.io.File;
 import java.io.IOException;
 import java.util.Scanner;
 
@@ -36,7 +40,9 @@ public class main
 
         System.out.println("Enter 1 to launch the GUI\n" +
                             "Enter 2 to launch the PTUI\n" +
-                            "Enter 3 to quit");
+                            "Enter 3 to quit\n" +
+                            "Enter 4 to launch the LBMS server on port " + LBMSServer.DEFAULT_PORT + "\n" +
+                            "Enter 5 to import visitors from a CSV file");
 
 
         System.out.print("Launch option: ");
@@ -74,5 +80,41 @@ public class main
         {
             System.exit(0);
         }
+        else if (option.equals("4"))
+        {
+            System.out.println("\n\n\nLaunching LBMS server...\n\n\n");
+            try
+            {
+                LBMSServer server = new LBMSServer(new Library(), LBMSServer.DEFAULT_PORT);
+                System.out.println("Listening on port " + server.getPort());
+                server.serve();
+            }
+            catch (IOException io)
+            {
+                System.out.println("Could not start the server: " + io.getMessage());
+                System.exit(1);
+            }
+        }
+        else if (option.equals("5"))
+        {
+            System.out.print("CSV file of first name, last name, address and phone number: ");
+            in.nextLine();
+            String path = in.nextLine().trim();
+            Library library = new Library();
+            try
+            {
+                VisitorImporter.Report report = library.importVisitors(new File(path));
+                System.out.println(report);
+                for (String reject : report.getRejects())
+                {
+                    System.out.println(reject);
+                }
+            }
+            catch (IOException io)
+            {
+                System.out.println("Could not import visitors: " + io.getMessage());
+            }
+            library.shutdown(null);
+        }
     }
 }